@@ -0,0 +1,11 @@
+#!/bin/sh
+# Runs the benchmarks (built with "mvn -B package"), and writes the results
+# to results/<commit>.json, with a "-dirty" suffix if the tree has uncommitted changes.
+# Any arguments are passed on to JMH.
+cd "$(dirname "$0")" || exit 1
+commit=$(git rev-parse --short HEAD) || exit 1
+if [ -n "$(git status --porcelain -- ../src)" ]; then
+	commit="$commit-dirty"
+fi
+mkdir -p results
+exec java -jar target/benchmarks.jar -rf json -rff "results/$commit.json" "$@"
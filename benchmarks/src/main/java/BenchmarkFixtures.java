@@ -0,0 +1,310 @@
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+
+import javax.sound.midi.MidiChannel;
+
+import benchmarks.Fixture;
+
+// The fixtures of the benchmarks in the benchmarks package (see Fixture),
+// each set up from the benchmark's parameters.
+public class BenchmarkFixtures {
+
+	static {
+		// nothing here needs a display
+		System.setProperty( "java.awt.headless", "true" );
+	}
+
+	private static final long SEED = 745;
+
+	// A score of the given length, in which each cell is on with the given probability.
+	static Score makeRandomScore( int numBeats, double density ) {
+		Score score = new Score();
+		NoteGrid grid = new DenseNoteGrid( numBeats, score.numPitches );
+		SongGenerator generator = new SongGenerator( SEED );
+		for ( int lowestPitch = 0; lowestPitch < score.numPitches; lowestPitch += 64 )
+			generator.fillBand( grid, lowestPitch, Math.min( 64, score.numPitches - lowestPitch ), density );
+		score.setGrid( grid ); // which picks the storage for the fill ratio
+		return score;
+	}
+
+	// Looks for one of the project's files in the current directory, then its parent.
+	static File findProjectFile( String name ) throws FileNotFoundException {
+		for ( String directory : new String[] { ".", ".." } ) {
+			File file = new File( directory, name );
+			if ( file.isFile() )
+				return file;
+		}
+		throw new FileNotFoundException( name );
+	}
+
+	// Random points, uniformly distributed in a disk of radius 100.
+	static ArrayList< Point2D > makeRandomPointsInDisk( int numPoints ) {
+		ArrayList< Point2D > points = new ArrayList< Point2D >( numPoints );
+		Random random = new Random( SEED );
+		for ( int i = 0; i < numPoints; ++i ) {
+			double radius = 100 * Math.sqrt( random.nextDouble() );
+			double angle = 2 * Math.PI * random.nextDouble();
+			points.add( new Point2D( (float)( radius * Math.cos( angle ) ), (float)( radius * Math.sin( angle ) ) ) );
+		}
+		return points;
+	}
+
+	static int getInt( Map< String, String > parameters, String name ) {
+		return Integer.parseInt( parameters.get( name ) );
+	}
+
+	static double getDouble( Map< String, String > parameters, String name ) {
+		return Double.parseDouble( parameters.get( name ) );
+	}
+
+	// Score.draw() of a whole score, framed in a 1024 x 704 image.
+	public static class DrawScore extends Fixture {
+		private Score score;
+		private final BufferedImage image = new BufferedImage( 1024, 704, BufferedImage.TYPE_INT_RGB );
+		private final GraphicsWrapper gw = new GraphicsWrapper();
+
+		public void setUp( Map< String, String > parameters ) {
+			score = makeRandomScore( getInt( parameters, "numBeats" ), getDouble( parameters, "density" ) );
+			gw.resize( image.getWidth(), image.getHeight() );
+			gw.frame( score.getBoundingRectangle(), false );
+		}
+
+		public Object run() {
+			Graphics2D g2 = image.createGraphics();
+			try {
+				gw.set( g2 );
+				gw.clear( 0.4f, 0.4f, 0.4f );
+				gw.setCoordinateSystemToWorldSpaceUnits();
+				score.draw( gw, true, -1, -1, -1 );
+			}
+			finally {
+				g2.dispose();
+			}
+			return image;
+		}
+	}
+
+	// One pass of the playback loop of MyCanvas.run() over every beat, without the sleeping,
+	// sending the notes to a channel that drops them.
+	public static class PlaybackScan extends Fixture {
+		private Score score;
+		private ScoreEditQueue queue;
+		private VoiceTracker voiceTracker;
+		private MidiChannel channel;
+
+		public void setUp( Map< String, String > parameters ) {
+			score = makeRandomScore( getInt( parameters, "numBeats" ), getDouble( parameters, "density" ) );
+			queue = new ScoreEditQueue( score );
+			voiceTracker = new VoiceTracker( score.midiNoteNumberOfLowestPitch );
+			channel = (MidiChannel)Proxy.newProxyInstance(
+				MidiChannel.class.getClassLoader(),
+				new Class< ? >[] { MidiChannel.class },
+				new InvocationHandler() {
+					public Object invoke( Object proxy, Method method, Object[] args ) {
+						Class< ? > type = method.getReturnType();
+						return type == boolean.class ? Boolean.FALSE : type == int.class ? Integer.valueOf( 0 ) : null;
+					}
+				}
+			);
+		}
+
+		public Object run() {
+			for ( int beat = 0; beat < score.numBeats; ++beat ) {
+				NoteGrid grid = queue.poll();
+				voiceTracker.playBeat( grid, beat, channel, Constant.midiVolume );
+			}
+			return voiceTracker.getNumMessagesSent();
+		}
+
+		public void tearDown() {
+			queue.detach();
+		}
+	}
+
+	// MyCanvas.clear(), with the canvas's listeners attached.
+	public static class ClearCanvas extends Fixture {
+		private MyCanvas canvas;
+		private NoteGrid filledGrid;
+
+		public void setUp( Map< String, String > parameters ) {
+			canvas = new MyCanvas( null );
+			filledGrid = makeRandomScore( getInt( parameters, "numBeats" ), getDouble( parameters, "density" ) ).grid;
+		}
+
+		public void prepare() {
+			canvas.score.setGrid( filledGrid.copy( filledGrid.isDense() ) );
+		}
+
+		public Object run() {
+			canvas.clear();
+			return canvas.score.grid;
+		}
+	}
+
+	// SongGenerator.generate(), as called by the "Generate random song" commands.
+	public static class GenerateSong extends Fixture {
+		private final SongGenerator generator = new SongGenerator( SEED );
+		private int numBeats, numPitches, numOctaves;
+		private double density;
+
+		public void setUp( Map< String, String > parameters ) {
+			numBeats = getInt( parameters, "numBeats" );
+			numPitches = new Score().numPitches;
+			numOctaves = getInt( parameters, "numOctaves" );
+			density = getDouble( parameters, "density" );
+		}
+
+		public Object run() {
+			return generator.generate( numBeats, numPitches, numOctaves, density );
+		}
+	}
+
+	// ScoreMidiReader.read() of a file into a grid of the default length.
+	public static class LoadMidiFile extends Fixture {
+		private File file;
+		private int numBeats, numPitches;
+
+		public void setUp( Map< String, String > parameters ) throws Exception {
+			file = findProjectFile( parameters.get( "file" ) );
+			Score score = new Score();
+			numBeats = score.numBeats;
+			numPitches = score.numPitches;
+		}
+
+		public Object run() throws Exception {
+			NoteGrid grid = new DenseNoteGrid( numBeats, numPitches );
+			ScoreMidiReader.read( file, grid );
+			return grid;
+		}
+	}
+
+	// ScoreMidiWriter.write() of the notes loaded from a file, to a temporary file.
+	public static class SaveMidiFile extends Fixture {
+		private NoteGrid grid;
+		private File outputFile;
+		private final ScoreMidiWriter writer = new ScoreMidiWriter();
+
+		public void setUp( Map< String, String > parameters ) throws Exception {
+			Score score = new Score();
+			grid = new DenseNoteGrid( score.numBeats, score.numPitches );
+			ScoreMidiReader.read( findProjectFile( parameters.get( "file" ) ), grid );
+			outputFile = File.createTempFile( "benchmark", ".mid" );
+		}
+
+		public Object run() throws Exception {
+			writer.write( grid, outputFile );
+			return outputFile;
+		}
+
+		public void tearDown() {
+			outputFile.delete();
+		}
+	}
+
+	// Point2DUtil.computeConvexHull() of random points, uniformly distributed in a disk.
+	public static class ConvexHull extends Fixture {
+		private ArrayList< Point2D > points;
+
+		public void setUp( Map< String, String > parameters ) {
+			points = makeRandomPointsInDisk( getInt( parameters, "numPoints" ) );
+		}
+
+		public Object run() {
+			return Point2DUtil.computeConvexHull( points );
+		}
+	}
+
+	// One of the Point2DUtil algorithms that have a PointBuffer overload, on random points in a disk,
+	// stored either as a list of points ("list") or as a PointBuffer ("buffer").
+	// The expanded polygon takes the points in the order generated, as a (self-intersecting) polygon,
+	// and the transform alternates between a rotation and its inverse, to keep the points in place.
+	public static class PointSetAlgorithm extends Fixture {
+		private String algorithm;
+		private boolean isBuffer;
+		private ArrayList< Point2D > list;
+		private Point2D [] array;
+		private PointBuffer buffer;
+		private final PointBuffer output = new PointBuffer();
+		private final Point2D centroid = new Point2D();
+		private final Vector2D eigenvector1 = new Vector2D(), eigenvector2 = new Vector2D();
+		private final double [] eigenvalues = new double[ 2 ];
+		private final Point2D A = new Point2D( -50, 0 ), B = new Point2D( 50, 0 );
+		private final Point2D A_rotated = new Point2D( 0, -50 ), B_rotated = new Point2D( 0, 50 );
+		private boolean isRotated = false;
+
+		public void setUp( Map< String, String > parameters ) {
+			algorithm = parameters.get( "algorithm" );
+			isBuffer = parameters.get( "storage" ).equals( "buffer" );
+			list = makeRandomPointsInDisk( getInt( parameters, "numPoints" ) );
+			array = list.toArray( new Point2D[ list.size() ] );
+			buffer = new PointBuffer( list );
+		}
+
+		public Object run() {
+			if ( algorithm.equals( "convexHull" ) )
+				return isBuffer ? Point2DUtil.computeConvexHull( buffer, output ) : Point2DUtil.computeConvexHull( list );
+			if ( algorithm.equals( "expandedPolygon" ) )
+				return isBuffer ? Point2DUtil.computeExpandedPolygon( buffer, 2, output ) : Point2DUtil.computeExpandedPolygon( list, 2 );
+			if ( algorithm.equals( "centroid" ) )
+				return isBuffer ? Point2DUtil.computeCentroidOfPointsInto( buffer, centroid ) : Point2DUtil.computeCentroidOfPointsInto( list, centroid );
+			if ( algorithm.equals( "pca" ) ) {
+				if ( isBuffer )
+					Point2DUtil.principleComponentAnalysis( buffer, eigenvector1, eigenvector2, eigenvalues );
+				else
+					Point2DUtil.principleComponentAnalysis( array, eigenvector1, eigenvector2, eigenvalues );
+				return eigenvalues;
+			}
+			if ( algorithm.equals( "transform" ) ) {
+				Point2D A_new = isRotated ? A : A_rotated, B_new = isRotated ? B : B_rotated;
+				Point2D A_old = isRotated ? A_rotated : A, B_old = isRotated ? B_rotated : B;
+				isRotated = ! isRotated;
+				if ( isBuffer )
+					Point2DUtil.transformPointsBasedOnDisplacementOfTwoPoints( buffer, A_old, B_old, A_new, B_new );
+				else
+					Point2DUtil.transformPointsBasedOnDisplacementOfTwoPoints( list, A_old, B_old, A_new, B_new );
+				return isBuffer ? buffer : list;
+			}
+			throw new IllegalArgumentException( algorithm );
+		}
+	}
+
+	// RadialMenuWidget.dragEvent(), with the menu of the canvas open at the origin
+	// and the cursor going around it, in and out of the neutral zone.
+	public static class RadialMenuDrag extends Fixture {
+		private static final int NUM_POSITIONS = 64; // a power of 2
+		private final RadialMenuWidget menu = new RadialMenuWidget();
+		private final int [] xs = new int[ NUM_POSITIONS ], ys = new int[ NUM_POSITIONS ];
+		private int i = 0;
+
+		public void setUp( Map< String, String > parameters ) {
+			menu.setItemLabelAndID( RadialMenuWidget.CENTRAL_ITEM, "", MyCanvas.RADIAL_MENU_STOP );
+			menu.setItemLabelAndID( 1, "STOP", MyCanvas.RADIAL_MENU_STOP );
+			menu.setItemLabelAndID( 3, "Draw", MyCanvas.RADIAL_MENU_DRAW );
+			menu.setItemLabelAndID( 5, "PLAY", MyCanvas.RADIAL_MENU_PLAY );
+			menu.setItemLabelAndID( 7, "Erase", MyCanvas.RADIAL_MENU_ERASE );
+			menu.pressEvent( 0, 0 );
+			for ( int j = 0; j < NUM_POSITIONS; ++j ) {
+				double radius = j % 4 == 0 ? RadialMenuWidget.radiusOfNeutralZone / 2 : 80;
+				double angle = 2 * Math.PI * j / NUM_POSITIONS;
+				xs[ j ] = (int)Math.round( radius * Math.cos( angle ) );
+				ys[ j ] = (int)Math.round( radius * Math.sin( angle ) );
+			}
+		}
+
+		public Object run() {
+			i = ( i + 1 ) & ( NUM_POSITIONS - 1 );
+			menu.dragEvent( xs[ i ], ys[ i ] );
+			return menu.getSelection();
+		}
+	}
+
+}
@@ -0,0 +1,38 @@
+package benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The state and the operation measured by a benchmark.
+//
+// JMH only generates benchmarks for classes in a named package, and code in a named package
+// can't refer to the application's classes, which are all in the default package.
+// So the benchmarks in this package only hold a Fixture, created by name,
+// whose implementations (in BenchmarkFixtures, in the default package) call the application.
+public abstract class Fixture {
+
+	// Called once per trial, with the benchmark's parameters.
+	public abstract void setUp( Map< String, String > parameters ) throws Exception;
+
+	// Called before each run() by the benchmarks whose operation uses up its state
+	// (e.g., clearing a score), and not measured.
+	public void prepare() throws Exception {
+	}
+
+	// The operation measured; the result goes to a Blackhole.
+	public abstract Object run() throws Exception;
+
+	public void tearDown() throws Exception {
+	}
+
+	// Creates the fixture BenchmarkFixtures.<name>, with the given parameter names and values.
+	public static Fixture create( String name, Object... namesAndValues ) throws Exception {
+		Map< String, String > parameters = new HashMap< String, String >();
+		for ( int i = 0; i + 1 < namesAndValues.length; i += 2 )
+			parameters.put( namesAndValues[ i ].toString(), namesAndValues[ i+1 ].toString() );
+		Fixture fixture = (Fixture)Class.forName( "BenchmarkFixtures$" + name ).getDeclaredConstructor().newInstance();
+		fixture.setUp( parameters );
+		return fixture;
+	}
+
+}
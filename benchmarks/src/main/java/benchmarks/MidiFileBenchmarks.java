@@ -0,0 +1,57 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Loading and saving the MIDI files that come with the project, as the "Load" and "Save" commands do
+// (loading into a grid of the default length, saving the grid loaded to a temporary file).
+// The files are looked up in the current directory, then its parent.
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class MidiFileBenchmarks {
+
+	@Param( { "FurElise.mid", "midifile.mid", "midifile2.mid", "test.mid" } )
+	public String file;
+
+	private Fixture load, save;
+
+	@Setup( Level.Trial )
+	public void setUp() throws Exception {
+		load = Fixture.create( "LoadMidiFile", "file", file );
+		save = Fixture.create( "SaveMidiFile", "file", file );
+	}
+
+	@TearDown( Level.Trial )
+	public void tearDown() throws Exception {
+		load.tearDown();
+		save.tearDown();
+	}
+
+	@Benchmark
+	public Object load() throws Exception {
+		return load.run();
+	}
+
+	@Benchmark
+	public Object save() throws Exception {
+		return save.run();
+	}
+
+}
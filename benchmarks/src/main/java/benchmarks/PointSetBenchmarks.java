@@ -0,0 +1,60 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The Point2DUtil algorithms on numPoints random points in a disk,
+// with the points in an ArrayList< Point2D > (storage "list") or in a PointBuffer (storage "buffer"):
+//    - convexHull: computeConvexHull();
+//    - expandedPolygon: computeExpandedPolygon(), of the points taken as a polygon;
+//    - centroid: computeCentroidOfPointsInto();
+//    - pca: principleComponentAnalysis();
+//    - transform: transformPointsBasedOnDisplacementOfTwoPoints(), in place.
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class PointSetBenchmarks {
+
+	@Param( { "1000", "100000", "1000000" } )
+	public int numPoints;
+
+	@Param( { "list", "buffer" } )
+	public String storage;
+
+	@Param( { "convexHull", "expandedPolygon", "centroid", "pca", "transform" } )
+	public String algorithm;
+
+	private Fixture fixture;
+
+	@Setup( Level.Trial )
+	public void setUp() throws Exception {
+		fixture = Fixture.create( "PointSetAlgorithm", "numPoints", numPoints, "storage", storage, "algorithm", algorithm );
+	}
+
+	@TearDown( Level.Trial )
+	public void tearDown() throws Exception {
+		fixture.tearDown();
+	}
+
+	@Benchmark
+	public Object run() throws Exception {
+		return fixture.run();
+	}
+
+}
@@ -0,0 +1,103 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The score's hot paths, on random scores of numBeats beats (and all 88 pitches)
+// in which each cell is on with probability density:
+//    - draw: Score.draw() over the whole score, into an offscreen image;
+//    - playbackScan: one pass of the playback thread's per-beat loop (MyCanvas.run())
+//      over the whole score, polling the edit queue and updating the sounding notes;
+//    - generateSong, generateSongV2: the "Generate random song" generators
+//      (with density as the probability of a note within their octaves).
+// Each benchmark has a state of its own, so that a trial only sets up the fixture it measures.
+// See ScoreClearBenchmark for MyCanvas.clear().
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ScoreBenchmarks {
+
+	// The parameters shared by the states below.
+	@State( Scope.Thread )
+	public static abstract class ScoreState {
+		@Param( { "128", "4096", "65536" } )
+		public int numBeats;
+
+		@Param( { "0.01", "0.04", "0.25" } )
+		public double density;
+
+		Fixture fixture;
+
+		abstract Fixture createFixture() throws Exception;
+
+		@Setup( Level.Trial )
+		public void setUp() throws Exception {
+			fixture = createFixture();
+		}
+
+		@TearDown( Level.Trial )
+		public void tearDown() throws Exception {
+			fixture.tearDown();
+		}
+	}
+
+	public static class DrawState extends ScoreState {
+		Fixture createFixture() throws Exception {
+			return Fixture.create( "DrawScore", "numBeats", numBeats, "density", density );
+		}
+	}
+
+	public static class PlaybackScanState extends ScoreState {
+		Fixture createFixture() throws Exception {
+			return Fixture.create( "PlaybackScan", "numBeats", numBeats, "density", density );
+		}
+	}
+
+	public static class GenerateSongState extends ScoreState {
+		Fixture createFixture() throws Exception {
+			return Fixture.create( "GenerateSong", "numBeats", numBeats, "density", density, "numOctaves", 1 );
+		}
+	}
+
+	public static class GenerateSongV2State extends ScoreState {
+		Fixture createFixture() throws Exception {
+			return Fixture.create( "GenerateSong", "numBeats", numBeats, "density", density, "numOctaves", 2 );
+		}
+	}
+
+	@Benchmark
+	public Object draw( DrawState state ) throws Exception {
+		return state.fixture.run();
+	}
+
+	@Benchmark
+	public Object playbackScan( PlaybackScanState state ) throws Exception {
+		return state.fixture.run();
+	}
+
+	@Benchmark
+	public Object generateSong( GenerateSongState state ) throws Exception {
+		return state.fixture.run();
+	}
+
+	@Benchmark
+	public Object generateSongV2( GenerateSongV2State state ) throws Exception {
+		return state.fixture.run();
+	}
+
+}
@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// MyCanvas.clear() on a random score, with the canvas's own listeners (e.g., the undo history) attached.
+// Clearing uses up the score, so it is refilled before each call, which is only accurate
+// for calls that take well over a microsecond; hence the single shot mode.
+@State( Scope.Thread )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 200 )
+@Measurement( iterations = 500 )
+@Fork( 1 )
+public class ScoreClearBenchmark {
+
+	@Param( { "128", "4096", "65536" } )
+	public int numBeats;
+
+	@Param( { "0.01", "0.04", "0.25" } )
+	public double density;
+
+	private Fixture clear;
+
+	@Setup( Level.Trial )
+	public void setUp() throws Exception {
+		clear = Fixture.create( "ClearCanvas", "numBeats", numBeats, "density", density );
+	}
+
+	@Setup( Level.Invocation )
+	public void prepare() throws Exception {
+		clear.prepare();
+	}
+
+	@TearDown( Level.Trial )
+	public void tearDown() throws Exception {
+		clear.tearDown();
+	}
+
+	@Benchmark
+	public Object clear() throws Exception {
+		return clear.run();
+	}
+
+}
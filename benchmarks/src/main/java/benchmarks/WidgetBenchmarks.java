@@ -0,0 +1,77 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The geometry behind the widgets:
+//    - convexHull: Point2DUtil.computeConvexHull() of numPoints random points in a disk;
+//    - radialMenuDrag: one RadialMenuWidget.dragEvent(), the cursor circling the open menu.
+public class WidgetBenchmarks {
+
+	@State( Scope.Thread )
+	public static class ConvexHullState {
+		@Param( { "16", "1000", "100000" } )
+		public int numPoints;
+
+		Fixture convexHull;
+
+		@Setup( Level.Trial )
+		public void setUp() throws Exception {
+			convexHull = Fixture.create( "ConvexHull", "numPoints", numPoints );
+		}
+
+		@TearDown( Level.Trial )
+		public void tearDown() throws Exception {
+			convexHull.tearDown();
+		}
+	}
+
+	@State( Scope.Thread )
+	public static class RadialMenuState {
+		Fixture radialMenuDrag;
+
+		@Setup( Level.Trial )
+		public void setUp() throws Exception {
+			radialMenuDrag = Fixture.create( "RadialMenuDrag" );
+		}
+
+		@TearDown( Level.Trial )
+		public void tearDown() throws Exception {
+			radialMenuDrag.tearDown();
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode( Mode.AverageTime )
+	@OutputTimeUnit( TimeUnit.MICROSECONDS )
+	@Warmup( iterations = 3, time = 1 )
+	@Measurement( iterations = 5, time = 1 )
+	@Fork( 1 )
+	public Object convexHull( ConvexHullState state ) throws Exception {
+		return state.convexHull.run();
+	}
+
+	@Benchmark
+	@BenchmarkMode( Mode.AverageTime )
+	@OutputTimeUnit( TimeUnit.NANOSECONDS )
+	@Warmup( iterations = 3, time = 1 )
+	@Measurement( iterations = 5, time = 1 )
+	@Fork( 1 )
+	public Object radialMenuDrag( RadialMenuState state ) throws Exception {
+		return state.radialMenuDrag.run();
+	}
+
+}
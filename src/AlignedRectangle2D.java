@@ -15,6 +15,12 @@ public class AlignedRectangle2D {
 
 	public void clear() { isEmpty = true; }
 
+	public void set( float minX, float minY, float maxX, float maxY ) {
+		min.copy( minX, minY );
+		max.copy( maxX, maxY );
+		isEmpty = false;
+	}
+
 	// Enlarge the rectangle as necessary to contain the given point
 	public void bound( Point2D p ) {
 		if ( isEmpty ) {
@@ -23,11 +29,11 @@ public class AlignedRectangle2D {
 			isEmpty = false;
 		}
 		else {
-			if ( p.x() < min.x() ) min.p[0] = p.x();
-			else if ( p.x() > max.x() ) max.p[0] = p.x();
+			if ( p.x < min.x ) min.x = p.x;
+			else if ( p.x > max.x ) max.x = p.x;
 
-			if ( p.y() < min.y() ) min.p[1] = p.y();
-			else if ( p.y() > max.y() ) max.p[1] = p.y();
+			if ( p.y < min.y ) min.y = p.y;
+			else if ( p.y > max.y ) max.y = p.y;
 		}
 	}
 
@@ -48,8 +54,12 @@ public class AlignedRectangle2D {
 	public Point2D getMin() { return min; }
 	public Point2D getMax() { return max; }
 	public Vector2D getDiagonal() { return Point2D.diff(max,min); }
+	public Vector2D getDiagonalInto( Vector2D dest ) { return Point2D.diffInto(max,min,dest); }
 	public Point2D getCenter() {
 		return Point2D.average( min, max );
 	}
+	public Point2D getCenterInto( Point2D dest ) {
+		return Point2D.averageInto( min, max, dest );
+	}
 }
 
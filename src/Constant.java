@@ -16,6 +16,9 @@ public class Constant {
 
 	public static final boolean USE_SOUND = true;
 
+	// If true, the playback thread prints its timing statistics (see PlaybackClock) each time it stops.
+	public static final boolean PRINT_PLAYBACK_TIMING = false;
+
 	public static final int midiVolume = 127;
 }
 
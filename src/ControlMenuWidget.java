@@ -21,7 +21,8 @@ public class ControlMenuWidget extends RadialMenuWidget {
 
 		if ( isInMenuingMode ) {
 			int returnValue = super.dragEvent(x,y);
-			float distanceSquared = new Vector2D(x-x0,y-y0).lengthSquared();
+			int dx = x-x0, dy = y-y0;
+			float distanceSquared = dx*dx + dy*dy;
 			if ( distanceSquared > menuRadius * menuRadius ) {
 				isInMenuingMode = false;
 				return S_REDRAW;
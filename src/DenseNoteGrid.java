@@ -0,0 +1,84 @@
+
+import java.util.Arrays;
+
+// A NoteGrid backed by a single long[] bitset,
+// with the WORDS_PER_BEAT words of each beat column stored consecutively.
+// Compared to a boolean[][], this uses 1 bit per cell, has no per-column
+// array headers, and lets whole columns be scanned a word at a time.
+class DenseNoteGrid extends NoteGrid {
+
+	// Only the first numBeats*WORDS_PER_BEAT words are in use;
+	// the rest is spare capacity, and is always zero.
+	private long [] words;
+
+	public DenseNoteGrid( int numBeats, int numPitches ) {
+		super( numBeats, numPitches );
+		words = new long[ numBeats * WORDS_PER_BEAT ];
+	}
+
+	public boolean isDense() { return true; }
+
+	public long getWord( int beat, int wordIndex ) {
+		return words[ beat * WORDS_PER_BEAT + wordIndex ];
+	}
+
+	public void setColumn( int beat, long word0, long word1 ) {
+		int i = beat * WORDS_PER_BEAT;
+		numNotes += Long.bitCount( word0 ) + Long.bitCount( word1 )
+			- Long.bitCount( words[i] ) - Long.bitCount( words[i+1] );
+		words[i] = word0;
+		words[i+1] = word1;
+	}
+
+	// Same as the inherited version, but without going through getWord() and setColumn().
+	public boolean set( int beat, int pitchIndex, boolean flag ) {
+		int i = beat * WORDS_PER_BEAT + (pitchIndex >>> 6);
+		long oldWord = words[i];
+		long newWord = flag ? ( oldWord | (1L << pitchIndex) ) : ( oldWord & ~(1L << pitchIndex) );
+		if ( newWord == oldWord )
+			return false;
+		words[i] = newWord;
+		numNotes += flag ? 1 : -1;
+		return true;
+	}
+
+	public int nextNonEmptyBeat( int fromBeat ) {
+		for ( int beat = Math.max( fromBeat, 0 ); beat < numBeats; ++beat ) {
+			int i = beat * WORDS_PER_BEAT;
+			if ( ( words[i] | words[i+1] ) != 0 )
+				return beat;
+		}
+		return -1;
+	}
+
+	public void setNumBeats( int newNumBeats ) {
+		assert newNumBeats >= 0;
+		if ( newNumBeats < numBeats ) {
+			clearBeats( newNumBeats, numBeats );
+		}
+		else if ( newNumBeats * WORDS_PER_BEAT > words.length ) {
+			// Like an ArrayList, double the capacity so that a series of small
+			// increments (e.g., while the user drags) costs amortized constant time each.
+			int newLength = Math.max( newNumBeats * WORDS_PER_BEAT, 2 * words.length );
+			words = Arrays.copyOf( words, newLength );
+		}
+		numBeats = newNumBeats;
+	}
+
+	public void clearBeats( int fromBeat, int toBeat ) {
+		fromBeat = Math.max( fromBeat, 0 );
+		toBeat = Math.min( toBeat, numBeats );
+		if ( fromBeat >= toBeat )
+			return;
+		if ( fromBeat == 0 && toBeat == numBeats ) {
+			numNotes = 0;
+		}
+		else {
+			for ( int i = fromBeat * WORDS_PER_BEAT; i < toBeat * WORDS_PER_BEAT; ++i )
+				numNotes -= Long.bitCount( words[i] );
+		}
+		Arrays.fill( words, fromBeat * WORDS_PER_BEAT, toBeat * WORDS_PER_BEAT, 0 );
+	}
+
+}
+
@@ -4,6 +4,7 @@ import java.awt.Graphics2D;
 import java.awt.BasicStroke;
 import java.awt.Font;
 import java.awt.FontMetrics;
+import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Arc2D;
@@ -43,7 +44,13 @@ class GraphicsWrapper {
 	private Ellipse2D.Float ellipse2D = new Ellipse2D.Float();
 	private Arc2D.Float arc2D = new Arc2D.Float();
 
-	public void set( Graphics g ) { this.g = g; this.g2 = (Graphics2D)g; this.originalTransform = g2.getTransform(); }
+	// The part of the window that needs to be drawn, in pixels, or null for all of it.
+	private Rectangle clipBoundsInPixels = null;
+
+	public void set( Graphics g ) {
+		this.g = g; this.g2 = (Graphics2D)g; this.originalTransform = g2.getTransform();
+		this.clipBoundsInPixels = g.getClipBounds();
+	}
 
 
 
@@ -74,13 +81,44 @@ class GraphicsWrapper {
 
 	public float convertPixelsToWorldSpaceUnitsX( float XInPixels ) { return ( XInPixels - offsetXInPixels )*scaleFactorInWorldSpaceUnitsPerPixel; }
 	public float convertPixelsToWorldSpaceUnitsY( float YInPixels ) { return ( YInPixels - offsetYInPixels )*scaleFactorInWorldSpaceUnitsPerPixel; }
-	public Point2D convertPixelsToWorldSpaceUnits( Point2D p ) { return new Point2D(convertPixelsToWorldSpaceUnitsX(p.x()),convertPixelsToWorldSpaceUnitsY(p.y())); }
+	public Point2D convertPixelsToWorldSpaceUnits( Point2D p ) { return convertPixelsToWorldSpaceUnitsInto( p, new Point2D() ); }
+	public Point2D convertPixelsToWorldSpaceUnitsInto( Point2D p, Point2D dest ) {
+		dest.copy( convertPixelsToWorldSpaceUnitsX( p.x ), convertPixelsToWorldSpaceUnitsY( p.y ) );
+		return dest;
+	}
 
 	public int convertWorldSpaceUnitsToPixelsX( float x ) { return Math.round( x / scaleFactorInWorldSpaceUnitsPerPixel + offsetXInPixels ); }
 	public int convertWorldSpaceUnitsToPixelsY( float y ) { return Math.round( y / scaleFactorInWorldSpaceUnitsPerPixel + offsetYInPixels ); }
-	public Point2D convertWorldSpaceUnitsToPixels( Point2D p ) { return new Point2D(convertWorldSpaceUnitsToPixelsX(p.x()),convertWorldSpaceUnitsToPixelsY(p.y())); }
+	public Point2D convertWorldSpaceUnitsToPixels( Point2D p ) { return convertWorldSpaceUnitsToPixelsInto( p, new Point2D() ); }
+	public Point2D convertWorldSpaceUnitsToPixelsInto( Point2D p, Point2D dest ) {
+		dest.copy( convertWorldSpaceUnitsToPixelsX( p.x ), convertWorldSpaceUnitsToPixelsY( p.y ) );
+		return dest;
+	}
 
 	public float getScaleFactorInWorldSpaceUnitsPerPixel() { return scaleFactorInWorldSpaceUnitsPerPixel; }
+	public float getOffsetXInPixels() { return offsetXInPixels; }
+	public float getOffsetYInPixels() { return offsetYInPixels; }
+
+	// Returns the region of world space that is currently visible in the window
+	// and inside the clip bounds of the Graphics given to set(),
+	// i.e., the only region where drawing can have any effect.
+	public AlignedRectangle2D getViewportInWorldSpaceUnits() {
+		return getViewportInWorldSpaceUnitsInto( new AlignedRectangle2D() );
+	}
+	public AlignedRectangle2D getViewportInWorldSpaceUnitsInto( AlignedRectangle2D dest ) {
+		int x0 = 0, y0 = 0, x1 = windowWidthInPixels, y1 = windowHeightInPixels;
+		if ( clipBoundsInPixels != null ) {
+			x0 = Math.max( x0, clipBoundsInPixels.x );
+			y0 = Math.max( y0, clipBoundsInPixels.y );
+			x1 = Math.max( x0, Math.min( x1, clipBoundsInPixels.x + clipBoundsInPixels.width ) );
+			y1 = Math.max( y0, Math.min( y1, clipBoundsInPixels.y + clipBoundsInPixels.height ) );
+		}
+		dest.set(
+			convertPixelsToWorldSpaceUnitsX( x0 ), convertPixelsToWorldSpaceUnitsY( y0 ),
+			convertPixelsToWorldSpaceUnitsX( x1 ), convertPixelsToWorldSpaceUnitsY( y1 )
+		);
+		return dest;
+	}
 
 	public void pan( float dx, float dy ) {
 		offsetXInPixels += dx;
@@ -108,24 +146,24 @@ class GraphicsWrapper {
 		Point2D A_old, Point2D B_old,
 		Point2D A_new, Point2D B_new
 	) {
-		// Compute midpoints of each pair of points
-		Point2D M1 = Point2D.average( A_old, B_old );
-		Point2D M2 = Point2D.average( A_new, B_new );
+		// (this is called on every drag event, so it sticks to floats rather than allocating points and vectors)
 
-		// This is the translation that the world should appear to undergo.
-		Vector2D translation = Point2D.diff( M2, M1 );
+		// Compute midpoints of each pair of points
+		float M1_x = (A_old.x+B_old.x)*0.5f, M1_y = (A_old.y+B_old.y)*0.5f;
+		float M2_x = (A_new.x+B_new.x)*0.5f, M2_y = (A_new.y+B_new.y)*0.5f;
 
 		// Compute a vector associated with each pair of points.
-		Vector2D v1 = Point2D.diff( A_old, B_old );
-		Vector2D v2 = Point2D.diff( A_new, B_new );
+		float v1_x = A_old.x-B_old.x, v1_y = A_old.y-B_old.y;
+		float v2_x = A_new.x-B_new.x, v2_y = A_new.y-B_new.y;
 
-		float v1_length = v1.length();
-		float v2_length = v2.length();
+		float v1_length = (float)Math.sqrt( v1_x*v1_x + v1_y*v1_y );
+		float v2_length = (float)Math.sqrt( v2_x*v2_x + v2_y*v2_y );
 		float scaleFactor = 1;
 		if ( v1_length > 0 && v2_length > 0 )
 			scaleFactor = v2_length / v1_length;
-		pan( translation.x(), translation.y() );
-		zoomIn( scaleFactor, M2.x(), M2.y() );
+		// the translation that the world should appear to undergo
+		pan( M2_x-M1_x, M2_y-M1_y );
+		zoomIn( scaleFactor, M2_x, M2_y );
 	}
 
 	public void frame(
@@ -135,23 +173,30 @@ class GraphicsWrapper {
 		hasFrameOrResizeBeenCalledBefore = true;
 		assert windowWidthInPixels > 0 && windowHeightInPixels > 0;
 
-		if ( rect.isEmpty() || rect.getDiagonal().x() == 0 || rect.getDiagonal().y() == 0 ) {
+		if ( rect.isEmpty() ) {
+			return;
+		}
+		// (in floats rather than points and vectors, since resize() calls this on every resize event)
+		float minX = rect.getMin().x, minY = rect.getMin().y;
+		float maxX = rect.getMax().x, maxY = rect.getMax().y;
+		if ( maxX - minX == 0 || maxY - minY == 0 ) {
 			return;
 		}
 		if ( expand ) {
-			float diagonal = rect.getDiagonal().length() / 20;
-			Vector2D v = new Vector2D( diagonal, diagonal );
-			rect = new AlignedRectangle2D( Point2D.diff(rect.getMin(),v), Point2D.sum(rect.getMax(),v) );
+			float diagonal = (float)Math.sqrt( (maxX-minX)*(maxX-minX) + (maxY-minY)*(maxY-minY) ) / 20;
+			minX -= diagonal; minY -= diagonal;
+			maxX += diagonal; maxY += diagonal;
 		}
-		if ( rect.getDiagonal().x() / rect.getDiagonal().y() >= windowWidthInPixels / (float)windowHeightInPixels ) {
-			offsetXInPixels = - rect.getMin().x() * windowWidthInPixels / rect.getDiagonal().x();
-			scaleFactorInWorldSpaceUnitsPerPixel = rect.getDiagonal().x() / windowWidthInPixels;
-			offsetYInPixels = windowHeightInPixels/2 - rect.getCenter().y() / scaleFactorInWorldSpaceUnitsPerPixel;
+		float diagonalX = maxX - minX, diagonalY = maxY - minY;
+		if ( diagonalX / diagonalY >= windowWidthInPixels / (float)windowHeightInPixels ) {
+			offsetXInPixels = - minX * windowWidthInPixels / diagonalX;
+			scaleFactorInWorldSpaceUnitsPerPixel = diagonalX / windowWidthInPixels;
+			offsetYInPixels = windowHeightInPixels/2 - (minY+maxY)*0.5f / scaleFactorInWorldSpaceUnitsPerPixel;
 		}
 		else {
-			offsetYInPixels = - rect.getMin().y() * windowHeightInPixels / rect.getDiagonal().y();
-			scaleFactorInWorldSpaceUnitsPerPixel = rect.getDiagonal().y() / windowHeightInPixels;
-			offsetXInPixels = windowWidthInPixels/2 - rect.getCenter().x() / scaleFactorInWorldSpaceUnitsPerPixel;
+			offsetYInPixels = - minY * windowHeightInPixels / diagonalY;
+			scaleFactorInWorldSpaceUnitsPerPixel = diagonalY / windowHeightInPixels;
+			offsetXInPixels = windowWidthInPixels/2 - (minX+maxX)*0.5f / scaleFactorInWorldSpaceUnitsPerPixel;
 		}
 	}
 
@@ -184,19 +229,18 @@ class GraphicsWrapper {
 		}
 	}
 
+	// Reused by setCoordinateSystemToWorldSpaceUnits() (the Graphics2D copies it).
+	private final AffineTransform worldSpaceTransform = new AffineTransform();
+
 	public void setCoordinateSystemToPixels() {
-		AffineTransform transform = new AffineTransform();
 		g2.setTransform(originalTransform);
-		g2.transform(transform);
 	}
 
 	public void setCoordinateSystemToWorldSpaceUnits() {
-		AffineTransform transform = new AffineTransform();
-		transform.translate( offsetXInPixels, offsetYInPixels );
 		float s = 1.0f/scaleFactorInWorldSpaceUnitsPerPixel;
-		transform.scale( s, s );
+		worldSpaceTransform.setTransform( s, 0, 0, s, offsetXInPixels, offsetYInPixels );
 		g2.setTransform(originalTransform);
-		g2.transform(transform);
+		g2.transform(worldSpaceTransform);
 	}
 
 	public void clear( float r, float g, float b ) {
@@ -214,12 +258,20 @@ class GraphicsWrapper {
 	public void disableAlphaBlending() {
 	}
 
+	// The last color made, reused as long as the same color is asked for again.
+	private Color color = Color.BLACK;
+	private float colorR = 0, colorG = 0, colorB = 0, colorAlpha = 1;
+
 	public void setColor( float r, float g, float b ) {
-		g2.setColor( new Color( r, g, b ) );
+		setColor( r, g, b, 1 );
 	}
 
 	public void setColor( float r, float g, float b, float alpha ) {
-		g2.setColor( new Color( r, g, b, alpha ) );
+		if ( r != colorR || g != colorG || b != colorB || alpha != colorAlpha ) {
+			color = new Color( r, g, b, alpha );
+			colorR = r; colorG = g; colorB = b; colorAlpha = alpha;
+		}
+		g2.setColor( color );
 	}
 
 	public void setColor( Color c ) {
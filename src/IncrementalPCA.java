@@ -0,0 +1,81 @@
+
+
+
+// Accumulates points one at a time, e.g. those of a stroke as it is drawn,
+// and gives the same results as Point2DUtil.principleComponentAnalysis() of all the points so far
+// in constant time, from running sums of the coordinates, their squares and their products.
+// The sums are of the coordinates relative to the first point,
+// which keeps them small and avoids most of the cancellation in computing the covariances.
+public class IncrementalPCA {
+
+	private int n = 0;
+	private double originX, originY;
+	private double sumX, sumY, sumXX, sumXY, sumYY;
+
+	public void clear() {
+		n = 0;
+		sumX = sumY = sumXX = sumXY = sumYY = 0;
+	}
+
+	public int getNumPoints() { return n; }
+
+	public void add( float x, float y ) {
+		if ( n == 0 ) {
+			originX = x;
+			originY = y;
+		}
+		double dx = x - originX, dy = y - originY;
+		sumX += dx;
+		sumY += dy;
+		sumXX += dx*dx;
+		sumXY += dx*dy;
+		sumYY += dy*dy;
+		++ n;
+	}
+
+	public void add( Point2D p ) {
+		add( p.x, p.y );
+	}
+
+	// Undoes add() of the given point.
+	public void remove( float x, float y ) {
+		if ( n <= 1 ) {
+			clear();
+			return;
+		}
+		double dx = x - originX, dy = y - originY;
+		sumX -= dx;
+		sumY -= dy;
+		sumXX -= dx*dx;
+		sumXY -= dx*dy;
+		sumYY -= dy*dy;
+		-- n;
+	}
+
+	// Returns the mean of the points, or the origin if there are none.
+	public Point2D getCentroidInto( Point2D dest ) {
+		if ( n == 0 )
+			dest.copy( 0, 0 );
+		else
+			dest.copy( (float)( originX + sumX/n ), (float)( originY + sumY/n ) );
+		return dest;
+	}
+
+	// Returns false if the PCA fails (see Point2DUtil.principleComponentAnalysis(), whose outputs these are).
+	// The eigenvalues are the variances along the eigenvectors.
+	public boolean computePrincipalComponents(
+		// output
+		Vector2D eigenvector1,
+		Vector2D eigenvector2,
+		double [] eigenvalues // caller must pass in a 2-element array
+	) {
+		if ( n < 2 )
+			return false;
+		// the (sample) covariances, with the variances kept from going negative by rounding
+		double covXX = Math.max( 0, ( sumXX - sumX*sumX/n ) / ( n - 1 ) );
+		double covXY = ( sumXY - sumX*sumY/n ) / ( n - 1 );
+		double covYY = Math.max( 0, ( sumYY - sumY*sumY/n ) / ( n - 1 ) );
+		return Point2DUtil.eigendecomposeCovarianceMatrix( covXX, covXY, covYY, eigenvector1, eigenvector2, eigenvalues );
+	}
+
+}
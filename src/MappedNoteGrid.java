@@ -0,0 +1,178 @@
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+// A NoteGrid opened from a .spr file (see ScoreSprFile), whose columns are read
+// straight from the memory-mapped file, so opening it only reads the header and the chunk index,
+// and only the pages holding the beats actually visited (e.g., those in view) are ever loaded.
+//
+// The file itself is never written to through the mapping.
+// Instead, a chunk is copied to the heap the first time one of its columns is changed,
+// and is marked dirty until the next save, which then only writes the dirty chunks
+// (see takeChanges() and ScoreSprFile.update()).
+//
+// The storage of a mapped grid is never converted to dense or sparse by the Score,
+// since that would lose the mapping.
+class MappedNoteGrid extends NoteGrid {
+
+	private static final int LOG2_BEATS_PER_CHUNK = ScoreSprFile.LOG2_BEATS_PER_CHUNK;
+	private static final int BEATS_PER_CHUNK = ScoreSprFile.BEATS_PER_CHUNK;
+	private static final int WORDS_PER_CHUNK = BEATS_PER_CHUNK * WORDS_PER_BEAT;
+
+	private final File file;
+	private final ByteBuffer mapped;
+
+	// The contents of chunk c are loadedChunks[c] if it isn't null,
+	// or else the words at chunkOffsets[c] in the mapping if that isn't 0,
+	// or else all zeros.
+	private long [] chunkOffsets;
+	private long [][] loadedChunks;
+	private final BitSet dirtyChunks = new BitSet();
+
+	MappedNoteGrid( File file, ByteBuffer mapped, int numBeats, int numPitches, int numNotes, long [] chunkOffsets ) {
+		super( numBeats, numPitches );
+		this.file = file;
+		this.mapped = mapped;
+		this.numNotes = numNotes;
+		this.chunkOffsets = chunkOffsets;
+		this.loadedChunks = new long[ chunkOffsets.length ][];
+	}
+
+	public File getFile() { return file; }
+
+	public boolean isDense() { return false; }
+
+	public boolean isMapped() { return true; }
+
+	private boolean isChunkEmpty( int chunk ) {
+		return loadedChunks[ chunk ] == null && chunkOffsets[ chunk ] == 0;
+	}
+
+	public long getWord( int beat, int wordIndex ) {
+		int chunk = beat >>> LOG2_BEATS_PER_CHUNK;
+		int i = ( beat & ( BEATS_PER_CHUNK - 1 ) ) * WORDS_PER_BEAT + wordIndex;
+		long [] words = loadedChunks[ chunk ];
+		if ( words != null )
+			return words[ i ];
+		long offset = chunkOffsets[ chunk ];
+		return offset == 0 ? 0 : mapped.getLong( (int)offset + 8 * i );
+	}
+
+	// Returns the heap copy of a chunk, making it if needed.
+	private long [] loadChunk( int chunk ) {
+		long [] words = loadedChunks[ chunk ];
+		if ( words == null ) {
+			words = new long[ WORDS_PER_CHUNK ];
+			long offset = chunkOffsets[ chunk ];
+			if ( offset != 0 ) {
+				for ( int i = 0; i < WORDS_PER_CHUNK; ++i )
+					words[ i ] = mapped.getLong( (int)offset + 8 * i );
+			}
+			loadedChunks[ chunk ] = words;
+		}
+		return words;
+	}
+
+	public void setColumn( int beat, long word0, long word1 ) {
+		int chunk = beat >>> LOG2_BEATS_PER_CHUNK;
+		if ( ( word0 | word1 ) == 0 && isChunkEmpty( chunk ) )
+			return;
+		long [] words = loadChunk( chunk );
+		int i = ( beat & ( BEATS_PER_CHUNK - 1 ) ) * WORDS_PER_BEAT;
+		numNotes += Long.bitCount( word0 ) + Long.bitCount( word1 )
+			- Long.bitCount( words[i] ) - Long.bitCount( words[i+1] );
+		words[i] = word0;
+		words[i+1] = word1;
+		dirtyChunks.set( chunk );
+	}
+
+	public int nextNonEmptyBeat( int fromBeat ) {
+		int beat = Math.max( fromBeat, 0 );
+		while ( beat < numBeats ) {
+			int chunk = beat >>> LOG2_BEATS_PER_CHUNK;
+			if ( isChunkEmpty( chunk ) ) {
+				beat = ( chunk + 1 ) << LOG2_BEATS_PER_CHUNK;
+				continue;
+			}
+			if ( ! isBeatEmpty( beat ) )
+				return beat;
+			++ beat;
+		}
+		return -1;
+	}
+
+	public void clearBeats( int fromBeat, int toBeat ) {
+		fromBeat = Math.max( fromBeat, 0 );
+		toBeat = Math.min( toBeat, numBeats );
+		int beat = fromBeat;
+		while ( beat < toBeat ) {
+			int chunk = beat >>> LOG2_BEATS_PER_CHUNK;
+			int chunkStart = chunk << LOG2_BEATS_PER_CHUNK;
+			int chunkEnd = chunkStart + BEATS_PER_CHUNK;
+			if ( isChunkEmpty( chunk ) ) {
+				// nothing to clear
+			}
+			else if ( beat == chunkStart && ( toBeat >= chunkEnd || toBeat == numBeats ) ) {
+				// the whole chunk goes, without being loaded
+				for ( int x = chunkStart; x < Math.min( chunkEnd, numBeats ); ++x )
+					numNotes -= countNotesInBeat( x );
+				loadedChunks[ chunk ] = null;
+				chunkOffsets[ chunk ] = 0;
+				dirtyChunks.set( chunk );
+			}
+			else {
+				for ( int x = beat; x < Math.min( chunkEnd, toBeat ); ++x ) {
+					if ( ! isBeatEmpty( x ) )
+						setColumn( x, 0, 0 );
+				}
+			}
+			beat = chunkEnd;
+		}
+	}
+
+	public void setNumBeats( int newNumBeats ) {
+		assert newNumBeats >= 0;
+		if ( newNumBeats < numBeats ) {
+			clearBeats( newNumBeats, numBeats );
+		}
+		else {
+			int numChunks = ScoreSprFile.getNumChunks( newNumBeats );
+			if ( numChunks > chunkOffsets.length ) {
+				int newLength = Math.max( numChunks, 2 * chunkOffsets.length );
+				chunkOffsets = Arrays.copyOf( chunkOffsets, newLength );
+				loadedChunks = Arrays.copyOf( loadedChunks, newLength );
+			}
+		}
+		numBeats = newNumBeats;
+	}
+
+	// Returns copies of the chunks changed since the grid was opened or last saved,
+	// which can then be written by another thread while the grid keeps being edited,
+	// and considers them saved.
+	public ScoreSprFile.Changes takeChanges() {
+		int numChunks = ScoreSprFile.getNumChunks( numBeats );
+		int numChangedChunks = dirtyChunks.get( 0, numChunks ).cardinality();
+		int [] chunkIndices = new int[ numChangedChunks ];
+		long [][] chunks = new long[ numChangedChunks ][];
+		int j = 0;
+		for ( int chunk = dirtyChunks.nextSetBit( 0 ); chunk >= 0 && chunk < numChunks; chunk = dirtyChunks.nextSetBit( chunk+1 ) ) {
+			chunkIndices[ j ] = chunk;
+			long [] words = loadedChunks[ chunk ];
+			chunks[ j ] = words == null ? null : words.clone();
+			++ j;
+		}
+		// the chunks past the end are gone, and start out empty if the grid grows again
+		dirtyChunks.clear();
+		return new ScoreSprFile.Changes( numBeats, numPitches, numNotes, chunkIndices, chunks );
+	}
+
+	// Marks the chunks of a save that failed (or was canceled) as dirty again.
+	public void restoreChanges( ScoreSprFile.Changes changes ) {
+		for ( int chunk : changes.chunkIndices )
+			dirtyChunks.set( chunk );
+	}
+
+}
+
@@ -0,0 +1,667 @@
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.spi.MidiFileWriter;
+import javax.swing.BorderFactory;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+
+
+class MyCanvas extends JPanel implements KeyListener, MouseListener, MouseMotionListener, Runnable {
+
+	SimplePianoRoll simplePianoRoll;
+	GraphicsWrapper gw = new GraphicsWrapper();
+
+	Score score = new Score();
+	ScoreHistory history = new ScoreHistory( score, ScoreHistory.DEFAULT_MAX_NUM_RECORDS );
+
+	// The playback thread and the event dispatch thread never wait on each other:
+	// the edits reach the playback thread through editQueue,
+	// the fields below that both threads use are volatile,
+	// and the playback thread parks itself while suspended until unpark()ed.
+	Thread thread = null;
+	volatile boolean isThreadSuspended;
+	volatile ScoreEditQueue editQueue = null; // only while playing without the sequencer
+	PlaybackClock playbackClock = new PlaybackClock();
+	VoiceTracker voiceTracker = new VoiceTracker( score.midiNoteNumberOfLowestPitch ); // only used by the playback thread
+	public static final double millisecondsPerBeatAtNormalTempo = 200;
+
+	// When playing with the sequencer, the thread only moves the time cursor,
+	// so it just needs to check the play position often enough for the cursor to look smooth.
+	volatile SequencerPlayback sequencerPlayback = null; // created the first time it's used, until closeSequencer()
+	volatile boolean isSequencerPlaying = false;
+	public static final double millisecondsBetweenCursorUpdates = 20;
+	Runnable sequencerUpdater = new Runnable() {
+		public void run() {
+			if ( sequencerPlayback != null )
+				sequencerPlayback.update();
+		}
+	};
+
+	/************************AJOUT************************/
+	volatile double tempo = 1;
+	boolean isTempoDirty = true;
+	int mouseX_init;
+	int deltaX_bis;
+	volatile int currentBeat = 0;
+
+	MidiFileWriter writer;
+	public static final int RADIAL_MENU_PLAY = 0;
+	public static final int RADIAL_MENU_STOP = 1;
+	public static final int RADIAL_MENU_DRAW = 2;
+	public static final int RADIAL_MENU_ERASE = 3;
+
+	public static final int CONTROL_MENU_ZOOM = 0;
+	public static final int CONTROL_MENU_PAN = 1;
+	public static final int CONTROL_MENU_TEMPO = 2;
+	public static final int CONTROL_MENU_TOTAL_DURATION = 3;
+	public static final int CONTROL_MENU_TRANSPOSE = 4;
+	public static final int CONTROL_MENU_DURATION = 5;
+
+	RadialMenuWidget radialMenu = new RadialMenuWidget();
+	ControlMenuWidget controlMenu = new ControlMenuWidget();	
+	int mouse_x, mouse_y, old_mouse_x, old_mouse_y;
+
+	boolean isControlKeyDown = false;
+
+	int beatOfMouseCursor = -1; // -1 for none
+	int midiNoteNumberOfMouseCurser = -1; // -1 for none
+
+	// Pixel position of the mouse when the mouse cursor last moved to another cell.
+	// The datatip is drawn relative to this (rather than to the current mouse position)
+	// so that it is drawn at the same place by every partial repaint.
+	int datatip_x, datatip_y;
+
+	// The pitch lanes and beat lines don't change between playback ticks,
+	// so they are drawn once into this image, which is then copied to the screen on each repaint.
+	// The image is redrawn when any of the state it was drawn with changes.
+	BufferedImage backgroundImage = null;
+	float backgroundOffsetX, backgroundOffsetY, backgroundScaleFactor;
+	int backgroundNumBeats;
+	boolean backgroundHighlightMajorScale;
+
+	public MyCanvas( SimplePianoRoll sp ) {
+		simplePianoRoll = sp;
+		setBorder( BorderFactory.createLineBorder( Color.black ) );
+		setBackground( Color.white );
+		addKeyListener( this );
+		addMouseListener( this );
+		addMouseMotionListener( this );	
+		/************************AJOUT************************/
+		radialMenu.setItemLabelAndID( RadialMenuWidget.CENTRAL_ITEM, "",            RADIAL_MENU_STOP );
+		radialMenu.setItemLabelAndID( 1,                             "STOP ◼",  RADIAL_MENU_STOP );
+		radialMenu.setItemLabelAndID( 3,                             "Draw ♪",  RADIAL_MENU_DRAW );
+		radialMenu.setItemLabelAndID( 5,                             "PLAY ►",  RADIAL_MENU_PLAY );
+		radialMenu.setItemLabelAndID( 7,                             "Erase ○", RADIAL_MENU_ERASE );
+
+		controlMenu.setItemLabelAndID( ControlMenuWidget.CENTRAL_ITEM, "", -1 );
+		controlMenu.setItemLabelAndID( 1, "Tempo ↑", CONTROL_MENU_TEMPO );
+		controlMenu.setItemLabelAndID( 2, "Pan", CONTROL_MENU_PAN );
+		controlMenu.setItemLabelAndID( 3, "Zoom →", CONTROL_MENU_ZOOM );
+		controlMenu.setItemLabelAndID( 5, "Total Duration ↓", CONTROL_MENU_TOTAL_DURATION );
+		controlMenu.setItemLabelAndID( 7, "← Transpose ", CONTROL_MENU_TRANSPOSE );
+		controlMenu.setItemLabelAndID( 8, "Duration ♫ ", CONTROL_MENU_DURATION );
+
+		gw.frame( score.getBoundingRectangle(), false );
+	}
+	public Dimension getPreferredSize() {
+		return new Dimension( Constant.INITIAL_WINDOW_WIDTH, Constant.INITIAL_WINDOW_HEIGHT );
+	}
+	public void clear() {
+		score.clear();
+		repaint();
+	}
+	// Repaints only the part of the canvas covering the given rectangle of world space.
+	private void repaintWorldRectangle( float x, float y, float width, float height ) {
+		int x0 = gw.convertWorldSpaceUnitsToPixelsX( x );
+		int y0 = gw.convertWorldSpaceUnitsToPixelsY( y );
+		int x1 = gw.convertWorldSpaceUnitsToPixelsX( x + width );
+		int y1 = gw.convertWorldSpaceUnitsToPixelsY( y + height );
+		// clamp to the canvas, and add a pixel of margin for rounding
+		int left = Math.max( Math.min( x0, x1 ) - 1, 0 );
+		int top = Math.max( Math.min( y0, y1 ) - 1, 0 );
+		int right = Math.min( Math.max( x0, x1 ) + 1, getWidth() );
+		int bottom = Math.min( Math.max( y0, y1 ) + 1, getHeight() );
+		if ( left < right && top < bottom )
+			repaint( left, top, right - left, bottom - top );
+	}
+	private void repaintBeat( int beat ) {
+		if ( beat >= 0 )
+			repaintWorldRectangle( beat, -score.numPitches, 1, score.numPitches );
+	}
+	private void repaintPitch( int midiNoteNumber ) {
+		if ( midiNoteNumber >= 0 )
+			repaintWorldRectangle( 0, score.midiNoteNumberOfLowestPitch - midiNoteNumber - 1, score.numBeats, 1 );
+	}
+	private void repaintNote( int beat, int midiNoteNumber ) {
+		repaintWorldRectangle( beat, score.midiNoteNumberOfLowestPitch - midiNoteNumber - 1, 1, 1 );
+	}
+
+	// The name of the pitch under the mouse cursor, shown by the datatip.
+	private String getDatatipText() {
+		return score.namesOfPitchClasses[
+			( midiNoteNumberOfMouseCurser - score.midiNoteNumberOfLowestPitch + Score.pitchClassOfLowestPitch )
+			% Score.numPitchesInOctave
+		];
+	}
+
+	// Returns the bounds of the datatip, in pixels, or null if there's no datatip.
+	private Rectangle getDatatipBounds() {
+		if ( midiNoteNumberOfMouseCurser < 0 || beatOfMouseCursor < 0 )
+			return null;
+		final int margin = 5;
+		final int x_offset = 15;
+
+		String s = getDatatipText();
+		int x0 = datatip_x + x_offset;
+		int y0 = datatip_y - RadialMenuWidget.textHeight - 2*margin;
+		int height = RadialMenuWidget.textHeight + 2*margin;
+		int width = Math.round( gw.stringWidth( s ) + 2*margin );
+		return new Rectangle( x0, y0, width, height );
+	}
+	private void repaintDatatip() {
+		Rectangle r = getDatatipBounds();
+		if ( r != null )
+			repaint( r.x - 1, r.y - 1, r.width + 2, r.height + 2 );
+	}
+
+	// Moves the mouse cursor to the given cell,
+	// and repaints only the beat, pitch, and datatip that changed.
+	private void setMouseCursor( int newBeatOfMouseCursor, int newMidiNoteNumberOfMouseCurser ) {
+		if ( newBeatOfMouseCursor == beatOfMouseCursor && newMidiNoteNumberOfMouseCurser == midiNoteNumberOfMouseCurser )
+			return;
+		repaintDatatip();
+		if ( newBeatOfMouseCursor != beatOfMouseCursor ) {
+			repaintBeat( beatOfMouseCursor );
+			repaintBeat( newBeatOfMouseCursor );
+		}
+		if ( newMidiNoteNumberOfMouseCurser != midiNoteNumberOfMouseCurser ) {
+			repaintPitch( midiNoteNumberOfMouseCurser );
+			repaintPitch( newMidiNoteNumberOfMouseCurser );
+		}
+		beatOfMouseCursor = newBeatOfMouseCursor;
+		midiNoteNumberOfMouseCurser = newMidiNoteNumberOfMouseCurser;
+		datatip_x = mouse_x;
+		datatip_y = mouse_y;
+		repaintDatatip();
+	}
+
+	public void frameAll() {
+		gw.frame( score.getBoundingRectangle(), false );
+		repaint();
+	}
+	private void updateBackgroundImage( Graphics g ) {
+		// On high resolution displays, the Graphics may be scaled,
+		// in which case the image should have more pixels than the canvas.
+		AffineTransform deviceTransform = ((Graphics2D)g).getTransform();
+		int imageWidth = (int)Math.ceil( getWidth() * deviceTransform.getScaleX() );
+		int imageHeight = (int)Math.ceil( getHeight() * deviceTransform.getScaleY() );
+		if (
+			backgroundImage != null
+			&& backgroundImage.getWidth() == imageWidth
+			&& backgroundImage.getHeight() == imageHeight
+			&& backgroundOffsetX == gw.getOffsetXInPixels()
+			&& backgroundOffsetY == gw.getOffsetYInPixels()
+			&& backgroundScaleFactor == gw.getScaleFactorInWorldSpaceUnitsPerPixel()
+			&& backgroundNumBeats == score.numBeats
+			&& backgroundHighlightMajorScale == simplePianoRoll.highlightMajorScale
+		)
+			return;
+
+		if ( backgroundImage == null || backgroundImage.getWidth() != imageWidth || backgroundImage.getHeight() != imageHeight )
+			backgroundImage = new BufferedImage( imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB );
+		Graphics2D g2 = backgroundImage.createGraphics();
+		g2.scale( deviceTransform.getScaleX(), deviceTransform.getScaleY() );
+		gw.set( g2 );
+		gw.clear(0.4f,0.4f,0.4f);
+		gw.setCoordinateSystemToWorldSpaceUnits();
+		score.drawBackground( gw, simplePianoRoll.highlightMajorScale );
+		g2.dispose();
+
+		backgroundOffsetX = gw.getOffsetXInPixels();
+		backgroundOffsetY = gw.getOffsetYInPixels();
+		backgroundScaleFactor = gw.getScaleFactorInWorldSpaceUnitsPerPixel();
+		backgroundNumBeats = score.numBeats;
+		backgroundHighlightMajorScale = simplePianoRoll.highlightMajorScale;
+	}
+
+	public void paintComponent( Graphics g ) {
+		super.paintComponent( g );
+		if ( getWidth() != gw.getWidth() || getHeight() != gw.getHeight() )
+			gw.resize( getWidth(), getHeight() );
+		updateBackgroundImage( g );
+		gw.set( g );
+		g.drawImage( backgroundImage, 0, 0, getWidth(), getHeight(), null );
+		gw.setupForDrawing();
+		gw.setCoordinateSystemToWorldSpaceUnits();
+		gw.enableAlphaBlending();
+
+		score.drawCursors(
+				gw,
+				simplePianoRoll.highlightMajorScale,
+				midiNoteNumberOfMouseCurser,
+				beatOfMouseCursor,
+				currentBeat
+				);
+		score.drawNotes( gw );
+
+		gw.setCoordinateSystemToPixels();
+
+		if ( radialMenu.isVisible() )
+			radialMenu.draw( gw );
+		if ( controlMenu.isVisible() )
+			controlMenu.draw( gw );
+
+		if ( ! radialMenu.isVisible() && ! controlMenu.isVisible() ) {
+			// draw datatip  
+			Rectangle r = getDatatipBounds();
+			if ( r != null ) {
+				final int margin = 5;
+				String s = getDatatipText();
+				gw.setColor( 0, 0, 0, 0.6f );
+				gw.fillRect( r.x, r.y, r.width, r.height );
+				gw.setColor( 1, 1, 1 );
+				gw.drawRect( r.x, r.y, r.width, r.height );
+				gw.drawString( r.x + margin, datatip_y - margin, s );
+			}
+		}
+	}
+
+	public void keyPressed( KeyEvent e ) {
+		if ( e.getKeyCode() == KeyEvent.VK_CONTROL ) {
+			isControlKeyDown = true;
+			if (
+					beatOfMouseCursor>=0
+					&& simplePianoRoll.rolloverMode == SimplePianoRoll.RM_PLAY_NOTE_UPON_ROLLOVER_IF_SPECIAL_KEY_HELD_DOWN
+					)
+				playNote( midiNoteNumberOfMouseCurser );
+		}
+	}
+	public void keyReleased( KeyEvent e ) {
+		if ( e.getKeyCode() == KeyEvent.VK_CONTROL ) {
+			isControlKeyDown = false;
+			stopPlayingNote( midiNoteNumberOfMouseCurser );
+		}
+	}
+	public void keyTyped( KeyEvent e ) {
+	}
+
+
+	public void mouseClicked( MouseEvent e ) { }
+	public void mouseEntered( MouseEvent e ) { }
+	public void mouseExited( MouseEvent e ) { }
+
+	public void paint( int mouse_x, int mouse_y ) {
+		int newBeatOfMouseCursor = score.getBeatForMouseX( gw, mouse_x );
+		int newMidiNoteNumberOfMouseCurser = score.getMidiNoteNumberForMouseY( gw, mouse_y );
+		setMouseCursor( newBeatOfMouseCursor, newMidiNoteNumberOfMouseCurser );
+
+		if ( beatOfMouseCursor >= 0 && midiNoteNumberOfMouseCurser >= 0 ) {
+			if ( simplePianoRoll.dragMode == SimplePianoRoll.DM_DRAW_NOTES ) {
+				if ( score.setNote( beatOfMouseCursor, midiNoteNumberOfMouseCurser-score.midiNoteNumberOfLowestPitch, true ) ) {
+					repaintNote( beatOfMouseCursor, midiNoteNumberOfMouseCurser );
+				}
+			}
+			else if ( simplePianoRoll.dragMode == SimplePianoRoll.DM_ERASE_NOTES ) {
+				if ( score.setNote( beatOfMouseCursor, midiNoteNumberOfMouseCurser-score.midiNoteNumberOfLowestPitch, false ) ) {
+					repaintNote( beatOfMouseCursor, midiNoteNumberOfMouseCurser );
+				}
+			}
+
+		}
+
+	}
+
+	public void mousePressed( MouseEvent e ) {
+		// everything the drag that starts here changes is undone as a whole
+		history.beginEdit();
+
+		old_mouse_x = mouse_x;
+		old_mouse_y = mouse_y;
+		mouse_x = e.getX();
+		mouse_y = e.getY();
+
+		isControlKeyDown = e.isControlDown();
+
+		if ( radialMenu.isVisible() || (SwingUtilities.isLeftMouseButton(e) && e.isControlDown()) ) {
+			int returnValue = radialMenu.pressEvent( mouse_x, mouse_y );
+			if ( returnValue == CustomWidget.S_REDRAW )
+				repaint();
+			if ( returnValue != CustomWidget.S_EVENT_NOT_CONSUMED )
+				return;
+		}
+		if ( controlMenu.isVisible() || (SwingUtilities.isLeftMouseButton(e) && e.isShiftDown()) ) {
+			int returnValue = controlMenu.pressEvent( mouse_x, mouse_y );
+			if ( returnValue == CustomWidget.S_REDRAW )
+				repaint();
+			if ( returnValue != CustomWidget.S_EVENT_NOT_CONSUMED )
+				return;
+		}
+		if ( SwingUtilities.isLeftMouseButton(e) ) {
+			paint( mouse_x, mouse_y );
+			System.out.println(mouse_x + " " + mouse_y);
+		}
+	}
+
+	public void mouseReleased( MouseEvent e ) {
+		history.endEdit();
+
+		old_mouse_x = mouse_x;
+		old_mouse_y = mouse_y;
+		mouse_x = e.getX();
+		mouse_y = e.getY();
+
+		isControlKeyDown = e.isControlDown();
+
+		if ( radialMenu.isVisible() ) {
+			int returnValue = radialMenu.releaseEvent( mouse_x, mouse_y );
+
+			int itemID = radialMenu.getIDOfSelection();
+			if ( 0 <= itemID ) {
+				switch ( itemID ) {
+				case RADIAL_MENU_PLAY:
+					simplePianoRoll.setMusicPlaying( true );
+
+					break;
+				case RADIAL_MENU_STOP:
+					simplePianoRoll.setMusicPlaying( false );	
+
+					break;
+				case RADIAL_MENU_DRAW:
+					simplePianoRoll.setDragMode( SimplePianoRoll.DM_DRAW_NOTES );
+					break;
+				case RADIAL_MENU_ERASE:
+					simplePianoRoll.setDragMode( SimplePianoRoll.DM_ERASE_NOTES );
+					break;
+				}
+			}
+
+			if ( returnValue == CustomWidget.S_REDRAW )
+				repaint();
+			if ( returnValue != CustomWidget.S_EVENT_NOT_CONSUMED )
+				return;
+		}
+		if ( controlMenu.isVisible() ) {
+			int returnValue = controlMenu.releaseEvent( mouse_x, mouse_y );
+
+			if ( returnValue == CustomWidget.S_REDRAW )
+				repaint();
+			if ( returnValue != CustomWidget.S_EVENT_NOT_CONSUMED )
+				return;
+		}
+
+		else {
+
+			switch ( controlMenu.getIDOfSelection() ) {
+
+			/************************AJOUT************************/
+			case CONTROL_MENU_TEMPO:
+				isTempoDirty = true;				
+				break;
+			default:
+				// TODO XXX
+				break;
+			}
+		}
+
+	}
+
+	private void playNote( int midiNoteNumber ) {
+		if ( Constant.USE_SOUND && midiNoteNumber >= 0 ) {
+			simplePianoRoll.midiChannels[0].noteOn(midiNoteNumber,Constant.midiVolume);
+		}
+	}
+	private void stopPlayingNote( int midiNoteNumber ) {
+		if ( Constant.USE_SOUND && midiNoteNumber >= 0 ) {
+			simplePianoRoll.midiChannels[0].noteOff(midiNoteNumber);
+		}
+	}
+
+	public void mouseMoved( MouseEvent e ) {
+		old_mouse_x = mouse_x;
+		old_mouse_y = mouse_y;
+		mouse_x = e.getX();
+		mouse_y = e.getY();
+
+		requestFocusInWindow();
+
+		isControlKeyDown = e.isControlDown();
+
+		if ( radialMenu.isVisible() ) {
+			int returnValue = radialMenu.moveEvent( mouse_x, mouse_y );
+			if ( returnValue == CustomWidget.S_REDRAW )
+				repaint();
+			if ( returnValue != CustomWidget.S_EVENT_NOT_CONSUMED )
+				return;
+		}
+		if ( controlMenu.isVisible() ) {
+			int returnValue = controlMenu.moveEvent( mouse_x, mouse_y );
+			if ( returnValue == CustomWidget.S_REDRAW )
+				repaint();
+			if ( returnValue != CustomWidget.S_EVENT_NOT_CONSUMED )
+				return;
+		}
+		else {
+			int newBeatOfMouseCursor = score.getBeatForMouseX( gw, mouse_x );
+			int newMidiNoteNumberOfMouseCurser = score.getMidiNoteNumberForMouseY( gw, mouse_y );
+			int oldMidiNoteNumberOfMouseCurser = midiNoteNumberOfMouseCurser;
+			setMouseCursor( newBeatOfMouseCursor, newMidiNoteNumberOfMouseCurser );
+			if ( midiNoteNumberOfMouseCurser != oldMidiNoteNumberOfMouseCurser ) {
+				stopPlayingNote( oldMidiNoteNumberOfMouseCurser );
+				if (
+						beatOfMouseCursor>=0
+						&& (
+								simplePianoRoll.rolloverMode == SimplePianoRoll.RM_PLAY_NOTE_UPON_ROLLOVER
+								|| (
+										simplePianoRoll.rolloverMode == SimplePianoRoll.RM_PLAY_NOTE_UPON_ROLLOVER_IF_SPECIAL_KEY_HELD_DOWN
+										&& isControlKeyDown
+										)
+								)
+						)
+					playNote( midiNoteNumberOfMouseCurser );
+			}
+		}
+
+	}
+
+	public void mouseDragged( MouseEvent e ) {
+		old_mouse_x = mouse_x;
+		old_mouse_y = mouse_y;
+		mouse_x = e.getX();
+		mouse_y = e.getY();
+		int delta_x = mouse_x - old_mouse_x;
+		int delta_y = mouse_y - old_mouse_y;
+
+		isControlKeyDown = e.isControlDown();
+
+		if ( radialMenu.isVisible() ) {
+			int returnValue = radialMenu.dragEvent( mouse_x, mouse_y );
+			if ( returnValue == CustomWidget.S_REDRAW )
+				repaint();
+			if ( returnValue != CustomWidget.S_EVENT_NOT_CONSUMED )
+				return;
+		}
+		if ( controlMenu.isVisible() ) {
+			if ( controlMenu.isInMenuingMode() ) {
+				int returnValue = controlMenu.dragEvent( mouse_x, mouse_y );
+				if ( returnValue == CustomWidget.S_REDRAW )
+					repaint();
+				if ( returnValue != CustomWidget.S_EVENT_NOT_CONSUMED )
+					return;
+			}
+			else {
+				// use the drag event to change the appropriate parameter
+				switch ( controlMenu.getIDOfSelection() ) {
+				case CONTROL_MENU_PAN:
+					gw.pan( delta_x, delta_y );
+					break;
+				case CONTROL_MENU_ZOOM:
+					gw.zoomIn( (float)Math.pow( Constant.zoomFactorPerPixelDragged, delta_x-delta_y ) );
+					break;
+
+					/************************AJOUT************************/
+
+				case CONTROL_MENU_TEMPO:
+					if(isTempoDirty)
+					{
+						mouseX_init = old_mouse_x;
+						isTempoDirty = false;						
+
+					}
+					else{
+						deltaX_bis = mouseX_init - mouse_x;
+						if(deltaX_bis < 0)
+						{
+							tempo = 1 - (Math.abs(deltaX_bis)/(double)gw.getWidth());
+							if(tempo < 0)
+								tempo = 0.005;
+						}
+
+						else if (deltaX_bis >  0)
+						{
+							tempo = 1 + (deltaX_bis/(double)gw.getWidth());
+						}
+					}
+					simplePianoRoll.tempoLabel.setText(Double.toString(Math.round(tempo*200)) + " ms");
+					if ( sequencerPlayback != null )
+						sequencerPlayback.setTempo( tempo );
+
+					break;
+
+
+
+					/************************AJOUT************************/
+				case CONTROL_MENU_TOTAL_DURATION:
+					score.setNumBeats( score.numBeats + delta_x );
+					break;	
+
+
+				default:
+					//TO DO
+					break;
+				}
+				repaint();
+			}
+		}
+		else {
+			paint( mouse_x, mouse_y );
+			System.out.println(mouse_y);
+		}
+	}
+
+	public void startBackgroundWork() {
+		currentBeat = 0;
+		isSequencerPlaying = false;
+		if ( Constant.USE_SOUND && simplePianoRoll.isSequencerUsedForPlayback ) {
+			try {
+				if ( sequencerPlayback == null )
+					sequencerPlayback = new SequencerPlayback(
+						score, simplePianoRoll.synthesizer.getReceiver(), millisecondsPerBeatAtNormalTempo
+					);
+				sequencerPlayback.start( tempo );
+				isSequencerPlaying = true;
+			}
+			catch ( Exception e ) {
+				// fall back to playing the notes from our own thread
+				e.printStackTrace();
+			}
+		}
+		if ( ! isSequencerPlaying && editQueue == null )
+			editQueue = new ScoreEditQueue( score );
+		isThreadSuspended = false;
+		if ( thread == null ) {
+			thread = new Thread( this );
+			thread.start();
+		}
+		else {
+			LockSupport.unpark( thread );
+		}
+	}
+	public void stopBackgroundWork() {
+		isThreadSuspended = true;
+		if ( isSequencerPlaying )
+			sequencerPlayback.stop();
+		if ( editQueue != null ) {
+			// the playback thread may still poll the queue once more, which is harmless
+			editQueue.detach();
+			editQueue = null;
+		}
+	}
+	// Releases the sequencer, e.g. when the application quits.
+	public void closeSequencer() {
+		stopBackgroundWork();
+		if ( sequencerPlayback != null ) {
+			isSequencerPlaying = false;
+			sequencerPlayback.close();
+			sequencerPlayback = null;
+		}
+	}
+	public void run() {
+		try {
+			playbackClock.start();
+
+			while (true) {
+
+				// Here's where the thread does some work
+				int previousBeat = currentBeat;
+				ScoreEditQueue queue = editQueue;
+				SequencerPlayback playback = sequencerPlayback;
+				if ( isSequencerPlaying && playback != null ) {
+					currentBeat = playback.getCurrentBeat();
+					// edits made during playback are re-synced from the event dispatch thread
+					SwingUtilities.invokeLater( sequencerUpdater );
+				}
+				else if ( queue != null ) {
+					// the thread only reads its own copy of the grid, brought up to date with the latest edits
+					NoteGrid grid = queue.poll();
+					int beat = previousBeat + 1;
+					if ( beat >= grid.getNumBeats() )
+						beat = 0;
+					if ( Constant.USE_SOUND )
+						voiceTracker.playBeat( grid, beat, simplePianoRoll.midiChannels[0], Constant.midiVolume );
+					currentBeat = beat;
+				}
+				// only the old and new positions of the time cursor need to be redrawn
+				if ( currentBeat != previousBeat ) {
+					repaintBeat( previousBeat );
+					repaintBeat( currentBeat );
+				}
+
+				// Now the thread checks to see if it should suspend itself
+				if ( isThreadSuspended ) {
+					if ( Constant.USE_SOUND )
+						voiceTracker.releaseAll( simplePianoRoll.midiChannels[0] );
+					if ( Constant.PRINT_PLAYBACK_TIMING )
+						System.out.println( "Playback timing: " + playbackClock.getStatistics() );
+					while ( isThreadSuspended ) {
+						// unpark() may come before park(), or park() may return spuriously,
+						// hence the loop
+						LockSupport.park( this );
+						if ( Thread.interrupted() )
+							throw new InterruptedException();
+					}
+					playbackClock.start();
+				}
+				if ( isSequencerPlaying )
+					playbackClock.awaitNextTick( millisecondsBetweenCursorUpdates * 1e6 );
+				else
+					playbackClock.awaitNextTick( millisecondsPerBeatAtNormalTempo * 1e6 * tempo );
+			}
+		}
+		catch (InterruptedException e) { }
+	}
+
+}
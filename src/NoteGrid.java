@@ -0,0 +1,160 @@
+
+// Stores which notes of a Score are on.
+// Each beat column is seen as WORDS_PER_BEAT 64-bit words,
+// with bit (pitchIndex % 64) of word (pitchIndex / 64) set when the note is on.
+// Subclasses decide how the columns are actually stored:
+// DenseNoteGrid keeps every column in one long[] bitset,
+// SparseNoteGrid only keeps the columns that have at least one note.
+abstract class NoteGrid {
+
+	public static final int WORDS_PER_BEAT = 2;
+	public static final int MAX_NUM_PITCHES = 64 * WORDS_PER_BEAT;
+
+	protected int numBeats;
+	protected int numPitches;
+	protected int numNotes = 0; // maintained by subclasses
+
+	protected NoteGrid( int numBeats, int numPitches ) {
+		assert numBeats >= 0 && 0 < numPitches && numPitches <= MAX_NUM_PITCHES;
+		this.numBeats = numBeats;
+		this.numPitches = numPitches;
+	}
+
+	public int getNumBeats() { return numBeats; }
+	public int getNumPitches() { return numPitches; }
+
+	public abstract boolean isDense();
+
+	// True for grids that are tied to a file (see MappedNoteGrid),
+	// whose storage must not be converted.
+	public boolean isMapped() { return false; }
+
+	// Returns the given word of a beat column,
+	// holding the notes with pitch indices [64*wordIndex, 64*wordIndex+63].
+	public abstract long getWord( int beat, int wordIndex );
+
+	// Replaces the contents of a whole beat column.
+	public abstract void setColumn( int beat, long word0, long word1 );
+
+	// Returns the smallest beat >= fromBeat that has at least one note on,
+	// or -1 if there is none.
+	// This is how callers should visit only the notes that exist:
+	//    for ( int x = grid.nextNonEmptyBeat( 0 ); x >= 0; x = grid.nextNonEmptyBeat( x+1 ) )
+	//       for ( int y = grid.nextNoteInBeat( x, 0 ); y >= 0; y = grid.nextNoteInBeat( x, y+1 ) )
+	public abstract int nextNonEmptyBeat( int fromBeat );
+
+	// Turns off every note in the beats [fromBeat, toBeat).
+	public abstract void clearBeats( int fromBeat, int toBeat );
+
+	// Grows or shrinks the grid, keeping the notes of the beats that remain.
+	// Notes in beats that are cut off are discarded.
+	// Runs in time proportional to the change in size
+	// (amortized, in the case of storage that must reallocate to grow).
+	public abstract void setNumBeats( int newNumBeats );
+
+	public void clear() {
+		clearBeats( 0, numBeats );
+	}
+
+	public boolean get( int beat, int pitchIndex ) {
+		return ( getWord( beat, pitchIndex >>> 6 ) & (1L << pitchIndex) ) != 0;
+	}
+
+	// Returns true if the cell changed.
+	public boolean set( int beat, int pitchIndex, boolean flag ) {
+		long word0 = getWord( beat, 0 );
+		long word1 = getWord( beat, 1 );
+		long bit = 1L << pitchIndex;
+		if ( pitchIndex < 64 ) {
+			long newWord0 = flag ? ( word0 | bit ) : ( word0 & ~bit );
+			if ( newWord0 == word0 )
+				return false;
+			setColumn( beat, newWord0, word1 );
+		}
+		else {
+			long newWord1 = flag ? ( word1 | bit ) : ( word1 & ~bit );
+			if ( newWord1 == word1 )
+				return false;
+			setColumn( beat, word0, newWord1 );
+		}
+		return true;
+	}
+
+	// Turns on the notes whose bits are set in the given words, leaving the others as they are.
+	public void orColumn( int beat, long word0, long word1 ) {
+		long old0 = getWord( beat, 0 );
+		long old1 = getWord( beat, 1 );
+		if ( ( word0 & ~old0 ) != 0 || ( word1 & ~old1 ) != 0 )
+			setColumn( beat, old0 | word0, old1 | word1 );
+	}
+
+	// Turns on every note that is on in the other grid,
+	// ignoring the beats that lie past the end of this one.
+	// Only the non-empty columns of the other grid are visited.
+	public void or( NoteGrid other ) {
+		for ( int x = other.nextNonEmptyBeat( 0 ); x >= 0 && x < numBeats; x = other.nextNonEmptyBeat( x+1 ) )
+			orColumn( x, other.getWord( x, 0 ), other.getWord( x, 1 ) );
+	}
+
+	public boolean isBeatEmpty( int beat ) {
+		return ( getWord( beat, 0 ) | getWord( beat, 1 ) ) == 0;
+	}
+
+	// Column scan.
+	// Returns the smallest pitch index >= fromPitchIndex whose note is on in the given beat,
+	// or -1 if there is none.
+	public int nextNoteInBeat( int beat, int fromPitchIndex ) {
+		if ( fromPitchIndex >= numPitches )
+			return -1;
+		int wordIndex = fromPitchIndex >>> 6;
+		long word = getWord( beat, wordIndex ) & ( -1L << fromPitchIndex );
+		while ( true ) {
+			if ( word != 0 )
+				return wordIndex * 64 + Long.numberOfTrailingZeros( word );
+			if ( ++wordIndex == WORDS_PER_BEAT )
+				return -1;
+			word = getWord( beat, wordIndex );
+		}
+	}
+
+	// Row scan.
+	// Returns the smallest beat >= fromBeat in which the given pitch is on,
+	// or -1 if there is none.
+	public int nextBeatWithNote( int pitchIndex, int fromBeat ) {
+		int wordIndex = pitchIndex >>> 6;
+		long bit = 1L << pitchIndex;
+		for ( int beat = nextNonEmptyBeat( Math.max( fromBeat, 0 ) ); beat >= 0; beat = nextNonEmptyBeat( beat+1 ) ) {
+			if ( ( getWord( beat, wordIndex ) & bit ) != 0 )
+				return beat;
+		}
+		return -1;
+	}
+
+	public int countNotesInBeat( int beat ) {
+		return Long.bitCount( getWord( beat, 0 ) ) + Long.bitCount( getWord( beat, 1 ) );
+	}
+
+	public int countNotes() {
+		return numNotes;
+	}
+
+	// Fraction of the cells of the grid that are on, in [0,1].
+	public float getFillRatio() {
+		if ( numBeats == 0 )
+			return 0;
+		return numNotes / ( (float)numBeats * numPitches );
+	}
+
+	// Returns a copy of this grid using the requested storage.
+	// Only the non-empty columns are visited.
+	public NoteGrid copy( boolean dense ) {
+		NoteGrid g = dense
+			? new DenseNoteGrid( numBeats, numPitches )
+			: new SparseNoteGrid( numBeats, numPitches );
+		for ( int x = nextNonEmptyBeat( 0 ); x >= 0; x = nextNonEmptyBeat( x+1 ) )
+			g.setColumn( x, getWord( x, 0 ), getWord( x, 1 ) );
+		return g;
+	}
+
+}
+
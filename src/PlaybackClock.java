@@ -0,0 +1,116 @@
+
+import java.util.concurrent.locks.LockSupport;
+
+// Paces the ticks of playback.
+// Each tick is scheduled against an absolute deadline measured with System.nanoTime(),
+// computed by adding the period to the previous deadline,
+// so that the time spent doing the work of a tick, and any jitter in waking up,
+// does not accumulate into tempo drift.
+// The period is given in (fractional) nanoseconds, and may change from one tick to the next.
+//
+// The clock also keeps statistics on how late each tick was woken up,
+// so that timing can be verified under load.
+class PlaybackClock {
+
+	// The clock parks the thread until this close to the deadline,
+	// then yields in a loop for the remainder, for sub-millisecond precision
+	// even on platforms where the resolution of parking is coarse.
+	public static final long SPIN_THRESHOLD_IN_NANOSECONDS = 2000000;
+
+	// If a tick is woken up later than this many periods past its deadline
+	// (e.g., because the machine was suspended or the thread was starved),
+	// the missed ticks are dropped and the schedule restarts from the current time.
+	// Smaller delays are caught up on, by making the following waits shorter.
+	public static final int MAX_PERIODS_TO_CATCH_UP = 4;
+
+	private double nextDeadline; // in nanoseconds, on the System.nanoTime() time line
+
+	// statistics
+	private long numTicks;
+	private long numSkippedTicks;
+	private double sumOfLateness, sumOfSquaredLateness; // in nanoseconds
+	private long maxLateness; // in nanoseconds
+	private long lastLateness; // in nanoseconds
+
+	// Starts a new schedule, with the next deadline being the current time,
+	// and resets the statistics.
+	public void start() {
+		nextDeadline = System.nanoTime();
+		numTicks = numSkippedTicks = 0;
+		sumOfLateness = sumOfSquaredLateness = 0;
+		maxLateness = lastLateness = 0;
+	}
+
+	// Waits until the next deadline, which is one period after the previous one.
+	public void awaitNextTick( double periodInNanoseconds ) throws InterruptedException {
+		nextDeadline += periodInNanoseconds;
+		long deadline = (long)nextDeadline;
+
+		while ( true ) {
+			long remaining = deadline - System.nanoTime();
+			if ( remaining <= 0 )
+				break;
+			if ( remaining > SPIN_THRESHOLD_IN_NANOSECONDS )
+				LockSupport.parkNanos( remaining - SPIN_THRESHOLD_IN_NANOSECONDS );
+			else
+				Thread.yield();
+			if ( Thread.interrupted() )
+				throw new InterruptedException();
+		}
+
+		long lateness = System.nanoTime() - deadline;
+		if ( lateness > MAX_PERIODS_TO_CATCH_UP * periodInNanoseconds ) {
+			long numMissedPeriods = (long)( lateness / periodInNanoseconds );
+			numSkippedTicks += numMissedPeriods;
+			nextDeadline += numMissedPeriods * periodInNanoseconds;
+		}
+
+		++ numTicks;
+		lastLateness = lateness;
+		sumOfLateness += lateness;
+		sumOfSquaredLateness += (double)lateness * lateness;
+		if ( lateness > maxLateness )
+			maxLateness = lateness;
+	}
+
+	public long getNumTicks() { return numTicks; }
+	public long getNumSkippedTicks() { return numSkippedTicks; }
+
+	// Average amount by which ticks were late, in milliseconds.
+	public double getMeanLatenessInMilliseconds() {
+		return numTicks == 0 ? 0 : sumOfLateness / numTicks / 1e6;
+	}
+
+	// Standard deviation of the lateness of ticks (i.e., the jitter), in milliseconds.
+	public double getJitterInMilliseconds() {
+		if ( numTicks == 0 )
+			return 0;
+		double mean = sumOfLateness / numTicks;
+		double variance = sumOfSquaredLateness / numTicks - mean * mean;
+		return Math.sqrt( Math.max( variance, 0 ) ) / 1e6;
+	}
+
+	public double getMaxLatenessInMilliseconds() {
+		return maxLateness / 1e6;
+	}
+
+	// How far behind the ideal schedule the most recent tick was, in milliseconds.
+	// With deadlines computed this way, this does not grow with the number of ticks.
+	public double getDriftInMilliseconds() {
+		return lastLateness / 1e6;
+	}
+
+	public String getStatistics() {
+		return String.format(
+			"%d ticks, lateness mean %.3f ms, jitter %.3f ms, max %.3f ms, drift %.3f ms, %d ticks skipped",
+			numTicks,
+			getMeanLatenessInMilliseconds(),
+			getJitterInMilliseconds(),
+			getMaxLatenessInMilliseconds(),
+			getDriftInMilliseconds(),
+			numSkippedTicks
+		);
+	}
+
+}
+
@@ -1,71 +1,90 @@
 
 
 
+// The coordinates are plain fields, so a point is a single small object.
+// The static operations that return a new point or vector each have an ...Into() variant
+// that stores the result in a given destination (which may be one of the arguments) and returns it,
+// so that code called on every mouse event can reuse its points instead of allocating new ones.
 public class Point2D {
 
-	public float [] p = new float[2];
+	public float x, y;
 
 	public Point2D() {
-		p[0] = p[1] = 0;
 	}
 
 	public Point2D( float x, float y ) {
-		p[0] = x;
-		p[1] = y;
+		this.x = x;
+		this.y = y;
 	}
 
 	public Point2D( Point2D P ) {
-		p[0] = P.p[0];
-		p[1] = P.p[1];
+		x = P.x;
+		y = P.y;
 	}
 
 	public Point2D( Vector2D V ) {
-		p[0] = V.v[0];
-		p[1] = V.v[1];
+		x = V.x;
+		y = V.y;
 	}
 
 	public void copy( float x, float y ) {
-		p[0] = x;
-		p[1] = y;
+		this.x = x;
+		this.y = y;
 	}
 
 	public void copy( Point2D P ) {
-		p[0] = P.p[0];
-		p[1] = P.p[1];
+		x = P.x;
+		y = P.y;
 	}
 
 	public boolean equals( Point2D other ) {
-		return x() == other.x() && y() == other.y();
+		return x == other.x && y == other.y;
 	}
 
-	public float x() { return p[0]; }
-	public float y() { return p[1]; }
-
-	// used to pass coordinates directly to OpenGL routines
-	public float [] get() { return p; }
+	public float x() { return x; }
+	public float y() { return y; }
 
 	// return the difference between two given points
 	static public Vector2D diff( Point2D a, Point2D b ) {
-		return new Vector2D( a.x()-b.x(), a.y()-b.y() );
+		return diffInto( a, b, new Vector2D() );
+	}
+	static public Vector2D diffInto( Point2D a, Point2D b, Vector2D dest ) {
+		dest.copy( a.x-b.x, a.y-b.y );
+		return dest;
 	}
 
 	// return the sum of the given point and vector
 	static public Point2D sum( Point2D a, Vector2D b ) {
-		return new Point2D( a.x()+b.x(), a.y()+b.y() );
+		return sumInto( a, b, new Point2D() );
+	}
+	static public Point2D sumInto( Point2D a, Vector2D b, Point2D dest ) {
+		dest.copy( a.x+b.x, a.y+b.y );
+		return dest;
 	}
 
 	// return the difference between the given point and vector
 	static public Point2D diff( Point2D a, Vector2D b ) {
-		return new Point2D( a.x()-b.x(), a.y()-b.y() );
+		return diffInto( a, b, new Point2D() );
+	}
+	static public Point2D diffInto( Point2D a, Vector2D b, Point2D dest ) {
+		dest.copy( a.x-b.x, a.y-b.y );
+		return dest;
 	}
 
+	public float distanceSquared( Point2D otherPoint ) {
+		float dx = x - otherPoint.x, dy = y - otherPoint.y;
+		return dx*dx + dy*dy;
+	}
 	public float distance( Point2D otherPoint ) {
-		return diff( this, otherPoint ).length();
+		return (float)Math.sqrt( distanceSquared( otherPoint ) );
 	}
 
 	static Point2D average( Point2D a, Point2D b ) {
-		// return new Point2D( Vector2D.mult( Vector2D.sum( new Vector2D(a), new Vector2D(b) ), 0.5f ) );
-		return new Point2D( (a.x()+b.x())*0.5f, (a.y()+b.y())*0.5f );
+		return averageInto( a, b, new Point2D() );
+	}
+	static Point2D averageInto( Point2D a, Point2D b, Point2D dest ) {
+		dest.copy( (a.x+b.x)*0.5f, (a.y+b.y)*0.5f );
+		return dest;
 	}
 
 }
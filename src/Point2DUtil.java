@@ -1,40 +1,15 @@
 
 import java.util.Arrays;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.LinkedList;
-import java.util.ListIterator;
-
-
-
-// This is used to sort points by some "score",
-// which could be an angle or other metric associated with each point.
-class Point2DAndScore {
-	public Point2D point;
-	public float score;
-	public boolean isScorePositiveInfinity; // if true, ``score'' is ignored
-	public Point2DAndScore(Point2D p,float s,boolean isPosInf) {
-		point = p; score = s; isScorePositiveInfinity = isPosInf;
-	}
-}
-class Point2DAndScoreComparator implements Comparator<Point2DAndScore> {
-	public int compare( Point2DAndScore a, Point2DAndScore b ) {
-		if ( a.isScorePositiveInfinity ) {
-			if ( b.isScorePositiveInfinity ) return 0; // equal
-			else return 1; // a is greater
-		}
-		else if ( b.isScorePositiveInfinity ) {
-			return -1; // b is greater
-		}
-		else return (a.score<b.score) ? -1 : ( (a.score>b.score) ? 1 : 0 );
-	}
-}
 
 
 
 public class Point2DUtil {
 
 	static public Point2D computeCentroidOfPoints( ArrayList<Point2D> points ) {
+		return computeCentroidOfPointsInto( points, new Point2D() );
+	}
+	static public Point2D computeCentroidOfPointsInto( ArrayList<Point2D> points, Point2D dest ) {
 		float x = 0, y = 0;
 		for ( Point2D p : points ) {
 			x += p.x();
@@ -44,7 +19,24 @@ public class Point2DUtil {
 			x /= points.size();
 			y /= points.size();
 		}
-		return new Point2D( x, y );
+		dest.copy( x, y );
+		return dest;
+	}
+	static public Point2D computeCentroidOfPointsInto( PointBuffer points, Point2D dest ) {
+		// (in doubles, as a float sum of many points loses too much precision)
+		double x = 0, y = 0;
+		int n = points.size();
+		float [] xs = points.xs, ys = points.ys;
+		for ( int i = 0; i < n; ++i ) {
+			x += xs[i];
+			y += ys[i];
+		}
+		if ( n > 1 ) {
+			x /= n;
+			y /= n;
+		}
+		dest.copy( (float)x, (float)y );
+		return dest;
 	}
 
 	static public boolean isPointInsidePolygon( ArrayList< Point2D > polygonPoints, Point2D q ) {
@@ -79,166 +71,162 @@ public class Point2DUtil {
 	}
 
 	// Returns the points on the convex hull in counter-clockwise order
-	// (assuming a coordinate system with x+ right and y+ up).
-	// Uses the well known algorithm "Graham's scan" for computing the convex hull in 2D,
-	// an algorithm nicely explained at
-	//    http://www.personal.kent.edu/~rmuhamma/Compgeometry/MyCG/ConvexHull/GrahamScan/grahamScan.htm
+	// (assuming a coordinate system with x+ right and y+ up),
+	// starting with the bottom left point (the leftmost of those with minimal y coordinate).
+	// The points returned are the given points themselves; of several points at the same position,
+	// the first is returned. Points on an edge of the hull, between its corners, are left out.
 	static public ArrayList< Point2D > computeConvexHull(
 		// input
 		ArrayList< Point2D > points
 	) {
 		if ( points == null ) return null;
-		if ( points.size() < 3 ) {
-			ArrayList< Point2D > returnValue = new ArrayList< Point2D >();
-			for ( Point2D p : points ) {
-				returnValue.add( p );
-			}
-			return returnValue;
+		PointBuffer hull = computeConvexHull( new PointBuffer( points ), new PointBuffer() );
+
+		// Find the given points at the corners of the hull, by their keys.
+		int numCorners = hull.size();
+		long [] cornerKeys = new long[ numCorners ];
+		for ( int j = 0; j < numCorners; ++j )
+			cornerKeys[j] = getSortKey( hull.xs[j], hull.ys[j] );
+		long [] sortedCornerKeys = Arrays.copyOf( cornerKeys, numCorners );
+		Arrays.sort( sortedCornerKeys );
+		Point2D [] corners = new Point2D[ numCorners ]; // in the order of sortedCornerKeys
+		for ( Point2D p : points ) {
+			int j = Arrays.binarySearch( sortedCornerKeys, getSortKey( p.x, p.y ) );
+			if ( j >= 0 && corners[j] == null )
+				corners[j] = p;
 		}
 
-		// There could be one or more points with minimal y coordinate.
-		// We'll call these the "bottom" points.
-		// Of these, we find the one with minimal x coordinate (the "bottom left" point)
-		// and maximal x coordinate (the "bottom right" point).
-		int indexOfBottomLeftPoint = 0;
-		Point2D bottomLeftPoint = points.get( 0 );
-		int indexOfBottomRightPoint = 0;
-		Point2D bottomRightPoint = points.get( 0 );
-		for ( int i = 1; i < points.size(); ++i ) {
-			Point2D candidatePoint = points.get( i );
-			if ( candidatePoint.y() < bottomLeftPoint.y() ) {
-				indexOfBottomLeftPoint = indexOfBottomRightPoint = i;
-				bottomLeftPoint = bottomRightPoint = candidatePoint;
-			}
-			else if ( candidatePoint.y() == bottomLeftPoint.y() ) {
-				if ( candidatePoint.x() < bottomLeftPoint.x() ) {
-					indexOfBottomLeftPoint = i;
-					bottomLeftPoint = candidatePoint;
-				}
-				else if ( candidatePoint.x() > bottomRightPoint.x() ) {
-					indexOfBottomRightPoint = i;
-					bottomRightPoint = candidatePoint;
-				}
-			}
+		ArrayList< Point2D > returnValue = new ArrayList< Point2D >( numCorners );
+		for ( int j = 0; j < numCorners; ++j )
+			returnValue.add( corners[ Arrays.binarySearch( sortedCornerKeys, cornerKeys[j] ) ] );
+		return returnValue;
+	}
+
+	// Above this many points, the points are sorted in parallel.
+	static final int MIN_POINTS_FOR_PARALLEL_SORT = 1 << 16;
+
+	// The same as above, for points in a buffer, with the corners of the hull stored in the given buffer
+	// (which must not be the input buffer).
+	// Uses Andrew's monotone chain algorithm:
+	// the points are sorted by x (then y), and the lower and upper halves of the hull
+	// are each built in one pass over the sorted points, in which each point is pushed on a stack
+	// after popping the points that would not make a left turn with it.
+	// The points are sorted as long keys that encode their coordinates (see getSortKey()),
+	// so that sorting them is a sort of primitives, and duplicates end up next to each other.
+	static public PointBuffer computeConvexHull(
+		PointBuffer points, // input
+		PointBuffer hull // output
+	) {
+		int n = points.size();
+		float [] xs = points.xs, ys = points.ys;
+		long [] keys = hull.sortKeys;
+		if ( keys.length < n )
+			keys = hull.sortKeys = new long[ n ];
+		for ( int i = 0; i < n; ++i )
+			keys[i] = getSortKey( xs[i], ys[i] );
+		if ( n >= MIN_POINTS_FOR_PARALLEL_SORT )
+			Arrays.parallelSort( keys, 0, n );
+		else
+			Arrays.sort( keys, 0, n );
+
+		// remove the duplicates
+		int numUniquePoints = 0;
+		for ( int i = 0; i < n; ++i ) {
+			if ( numUniquePoints == 0 || keys[i] != keys[numUniquePoints-1] )
+				keys[ numUniquePoints++ ] = keys[i];
 		}
 
-		// Imagine that for each point, we compute the point's angle with respect to bottomLeftPoint,
-		// and then sort the points by this angle.
-		// This is equivalent to sorting the points by their cotangent, which is faster to compute.
-		// Points with minimal y coordinate (i.e., "bottom" points)
-		// will be given a cotangent of +infinity and dealt with later.
-		Point2DAndScore [] pointsWithCotangents = new Point2DAndScore[ points.size() ];
-		for ( int i = 0; i < points.size(); ++i ) {
-			Point2D p = points.get( i );
-			float delta_y = p.y() - bottomLeftPoint.y();
-			assert delta_y >= 0;
-			if ( delta_y == 0 ) {
-				pointsWithCotangents[i] = new Point2DAndScore( p, 0, true );
-			}
-			else {
-				float delta_x = p.x() - bottomLeftPoint.x();
-				pointsWithCotangents[i] = new Point2DAndScore( p, delta_x/delta_y /* the cotangent */, false );
+		// The stack, in the output buffer, never holds more than numUniquePoints+1 points
+		// (the last point pushed being the first point again).
+		hull.ensureCapacity( numUniquePoints + 1 );
+		float [] hullXs = hull.xs, hullYs = hull.ys;
+		int top = 0;
+		if ( numUniquePoints < 3 ) {
+			for ( int i = 0; i < numUniquePoints; ++i ) {
+				hullXs[top] = getX( keys[i] );
+				hullYs[top] = getY( keys[i] );
+				++ top;
 			}
 		}
-		// sort the points by their cotangent
-		Arrays.sort(pointsWithCotangents, new Point2DAndScoreComparator());
-
-		// We'll need to be able to efficiently remove points from consideration,
-		// so we copy them into a linked list.
-		// In doing this, we also reverse the order of points
-		// (so they are in descending order of cotangent, i.e., in counter-clockwise order).
-		// The points with +infinity cotangent (i.e. the "bottom" points)
-		// can also be removed from consideration here,
-		// so long as we keep the "bottom left" and "bottom right" points.
-		LinkedList< Point2D > orderedPoints = new LinkedList< Point2D >();
-		orderedPoints.add( bottomLeftPoint );
-		// check if the "bottom left" and "bottom right" points are distinct
-		if ( indexOfBottomLeftPoint != indexOfBottomRightPoint )
-			orderedPoints.add( bottomRightPoint );
-		for ( int i = pointsWithCotangents.length - 1; i >= 0; --i ) {
-			if ( ! pointsWithCotangents[i].isScorePositiveInfinity ) {
-				orderedPoints.add( pointsWithCotangents[i].point );
-			}
+		else {
+			// the lower hull, from left to right
+			for ( int i = 0; i < numUniquePoints; ++i )
+				top = pushOntoHull( hullXs, hullYs, top, 2, getX( keys[i] ), getY( keys[i] ) );
+			// the upper hull, from right to left, ending with the first point again
+			int bottomOfUpperHull = top + 1;
+			for ( int i = numUniquePoints - 2; i >= 0; --i )
+				top = pushOntoHull( hullXs, hullYs, top, bottomOfUpperHull, getX( keys[i] ), getY( keys[i] ) );
+			-- top; // drop the first point's second copy
 		}
+		hull.setSize( top );
 
-		if ( orderedPoints.size() > 2 ) {
-			// We will loop through the ordered points, processing 3 consecutive points at a time.
-			// Two iterators are used to backup and move forward.
-			Point2D p0 = orderedPoints.get(0);
-			Point2D p1 = orderedPoints.get(1);
-			Point2D p2 = orderedPoints.get(2);
-			ListIterator< Point2D > it3 = orderedPoints.listIterator(3);
-			assert it3.nextIndex() == 3;
-			while ( true ) {
-				assert orderedPoints.size() > 2;
-				Vector2D v01 = new Vector2D( p1.x()-p0.x(), p1.y()-p0.y() );
-				Vector2D v12 = new Vector2D( p2.x()-p1.x(), p2.y()-p1.y() );
-
-				// Compute the z component of the cross product of v1 and v2
-				// (Note that the x and y components of the cross product are zero,
-				// because the z components of a and b are both zero)
-				float crossProduct_z = v01.x()*v12.y() - v01.y()*v12.x();
-
-				if ( crossProduct_z > 0 ) {
-					// we have a left turn; try to step forward
-					if ( it3.hasNext() ) {
-						p0 = p1;
-						p1 = p2;
-						p2 = it3.next();
-					}
-					else {
-						// we can't step forward
-						break;
-					}
-				}
-				else {
-					// Either we have a right-hand turn,
-					// or the points are collinear (with the 3rd point either in front, or behind, the 2nd)
-					// In any case, we remove the 2nd point from consideration and (try to) backup.
-					assert it3.hasPrevious();
-					it3.previous();
-					assert it3.hasPrevious();
-					it3.previous();
-					it3.remove(); // deletes the 2nd point
-					assert it3.hasNext();
-					it3.next(); // now the iterator is back to where it used to be
-
-					// now we try to backup
-					assert it3.hasPrevious();
-					it3.previous();
-					assert it3.hasPrevious();
-					it3.previous();
-					if ( it3.hasPrevious() ) {
-						p1 = p0;
-						p0 = it3.previous();
-						it3.next();
-						it3.next();
-						it3.next();
-					}
-					else {
-						it3.next();
-						it3.next();
-						// we step forward instead
-						if ( it3.hasNext() ) {
-							p1 = p2;
-							p2 = it3.next();
-						}
-						else {
-							// we can't move in either direction
-							break;
-						}
-					}
-				}
-			} // while
+		// Start the hull at the bottom left point rather than at the leftmost one.
+		int indexOfBottomLeftPoint = 0;
+		for ( int j = 1; j < top; ++j ) {
+			if (
+				hullYs[j] < hullYs[indexOfBottomLeftPoint]
+				|| ( hullYs[j] == hullYs[indexOfBottomLeftPoint] && hullXs[j] < hullXs[indexOfBottomLeftPoint] )
+			) {
+				indexOfBottomLeftPoint = j;
+			}
 		}
+		if ( indexOfBottomLeftPoint > 0 ) {
+			// rotate the arrays by reversing both parts, then the whole
+			reverse( hullXs, hullYs, 0, indexOfBottomLeftPoint );
+			reverse( hullXs, hullYs, indexOfBottomLeftPoint, top );
+			reverse( hullXs, hullYs, 0, top );
+		}
+		return hull;
+	}
 
-		// copy the results to the appropriate output format
-		ArrayList< Point2D > returnValue = new ArrayList< Point2D >();
+	// Pushes the given point on the stack of points of the hull under construction, which has the given top,
+	// after popping the points above the given bottom that don't make a strict left turn with it
+	// (so that collinear points are popped too). Returns the new top.
+	static private int pushOntoHull( float [] hullXs, float [] hullYs, int top, int bottom, float x, float y ) {
+		while ( top >= bottom ) {
+			// The z component of the cross product of the last two edges, computed in doubles,
+			// in which the differences and products of floats are (nearly always) exact,
+			// so that the sign of a nearly collinear turn is right.
+			double x0 = hullXs[top-2], y0 = hullYs[top-2];
+			double x1 = hullXs[top-1], y1 = hullYs[top-1];
+			double crossProduct_z = (x1-x0)*(y-y0) - (y1-y0)*(x-x0);
+			if ( crossProduct_z > 0 )
+				break;
+			-- top;
+		}
+		hullXs[top] = x;
+		hullYs[top] = y;
+		return top + 1;
+	}
 
-		for ( Point2D p : orderedPoints ) {
-			returnValue.add( p );
+	// Reverses the points in [begin,end).
+	static private void reverse( float [] xs, float [] ys, int begin, int end ) {
+		for ( int i = begin, j = end - 1; i < j; ++i, --j ) {
+			float x = xs[i]; xs[i] = xs[j]; xs[j] = x;
+			float y = ys[i]; ys[i] = ys[j]; ys[j] = y;
 		}
-		return returnValue;
+	}
+
+	// Returns a key for the given point such that sorting keys as longs sorts the points by x, then y.
+	// The high 32 bits are the bits of x, with those of negative values flipped so that they sort as ints,
+	// and the low 32 bits are those of y, likewise, with the sign bit flipped so that they sort as unsigned ints.
+	// The coordinates can be decoded from the key (see getX() and getY()).
+	// -0 is turned into 0, so that both give the same key.
+	static private long getSortKey( float x, float y ) {
+		return ( (long)getSortableBits( x ) << 32 ) | ( ( getSortableBits( y ) ^ 0x80000000 ) & 0xffffffffL );
+	}
+	static private float getX( long key ) {
+		return getFloatFromSortableBits( (int)( key >> 32 ) );
+	}
+	static private float getY( long key ) {
+		return getFloatFromSortableBits( (int)key ^ 0x80000000 );
+	}
+	static private int getSortableBits( float f ) {
+		int bits = Float.floatToIntBits( f + 0.0f ); // adding 0 turns -0 into 0
+		return bits ^ ( ( bits >> 31 ) & 0x7fffffff );
+	}
+	static private float getFloatFromSortableBits( int bits ) {
+		return Float.intBitsToFloat( bits ^ ( ( bits >> 31 ) & 0x7fffffff ) );
 	}
 
 	static public ArrayList< Point2D > computeExpandedPolygon(
@@ -284,6 +272,76 @@ public class Point2DUtil {
 		return newPoints;
 	}
 
+	// The same as above, for points in a buffer, with the new points stored in the given buffer
+	// (which must not be the input buffer).
+	static public PointBuffer computeExpandedPolygon(
+		PointBuffer points, // input
+		float marginThickness,
+		PointBuffer newPoints // output
+	) {
+		int n = points.size();
+		float [] xs = points.xs, ys = points.ys;
+		newPoints.clear();
+		if ( n == 0 ) {
+			// do nothing
+		}
+		else if ( n == 1 ) {
+			newPoints.add( xs[0]-marginThickness, ys[0] );
+			newPoints.add( xs[0], ys[0]-marginThickness );
+			newPoints.add( xs[0]+marginThickness, ys[0] );
+			newPoints.add( xs[0], ys[0]+marginThickness );
+		}
+		else if ( n == 2 ) {
+			float v0_x = xs[1]-xs[0], v0_y = ys[1]-ys[0];
+			float k = getNormalizationFactor( v0_x, v0_y );
+			v0_x = v0_x*k*marginThickness;
+			v0_y = v0_y*k*marginThickness;
+			float v1_x = -v0_y, v1_y = v0_x;
+			newPoints.add( xs[0]+v1_x, ys[0]+v1_y );
+			newPoints.add( xs[0]-v0_x, ys[0]-v0_y );
+			newPoints.add( xs[0]-v1_x, ys[0]-v1_y );
+			newPoints.add( xs[1]-v1_x, ys[1]-v1_y );
+			newPoints.add( xs[1]+v0_x, ys[1]+v0_y );
+			newPoints.add( xs[1]+v1_x, ys[1]+v1_y );
+		}
+		else {
+			newPoints.ensureCapacity( 3 * n );
+			for ( int i = 0; i < n; ++i ) {
+				int previous = i==0 ? n-1 : i-1;
+				int next = i==n-1 ? 0 : i+1;
+				float x = xs[i], y = ys[i];
+				float v_previous_x = x-xs[previous], v_previous_y = y-ys[previous];
+				float k = getNormalizationFactor( v_previous_x, v_previous_y );
+				v_previous_x *= k;
+				v_previous_y *= k;
+				float v_next_x = x-xs[next], v_next_y = y-ys[next];
+				k = getNormalizationFactor( v_next_x, v_next_y );
+				v_next_x *= k;
+				v_next_y *= k;
+				float v_sum_x = v_next_x+v_previous_x, v_sum_y = v_next_y+v_previous_y;
+				k = getNormalizationFactor( v_sum_x, v_sum_y );
+				v_sum_x *= k;
+				v_sum_y *= k;
+
+				newPoints.add( x + v_previous_y*marginThickness, y - v_previous_x*marginThickness );
+				newPoints.add( x + v_sum_x*marginThickness, y + v_sum_y*marginThickness );
+				newPoints.add( x - v_next_y*marginThickness, y + v_next_x*marginThickness );
+			}
+		}
+		return newPoints;
+	}
+
+	static private float length( float x, float y ) {
+		return (float)Math.sqrt( x*x + y*y );
+	}
+
+	// Returns the factor by which Vector2D.normalized() scales the given vector
+	// (1 for a zero vector, which it leaves as it is).
+	static private float getNormalizationFactor( float x, float y ) {
+		float l = length( x, y );
+		return l > 0 ? 1/l : 1;
+	}
+
 	// Returns false if the PCA fails.
 	static public boolean principleComponentAnalysis(
 		// Input
@@ -327,6 +385,54 @@ public class Point2DUtil {
 		covXY /= ( points.length - 1 );
 		covYY /= ( points.length - 1 );
 
+		return eigendecomposeCovarianceMatrix( covXX, covXY, covYY, eigenvector1, eigenvector2, eigenvalues );
+	}
+
+	// The same as above, for points in a buffer.
+	static public boolean principleComponentAnalysis(
+		PointBuffer points, // input
+		Vector2D eigenvector1, // output
+		Vector2D eigenvector2, // output
+		double [] eigenvalues // output; caller must pass in a 2-element array
+	) {
+		int n = points.size();
+		if ( n < 2 )
+			return false;
+		float [] xs = points.xs, ys = points.ys;
+
+		double meanX = 0, meanY = 0;
+		for ( int i = 0; i < n; ++i ) {
+			meanX += xs[i];
+			meanY += ys[i];
+		}
+		meanX /= n;
+		meanY /= n;
+
+		double covXX = 0, covXY = 0, covYY = 0;
+		for ( int i = 0; i < n; ++i ) {
+			double dx = xs[i]-meanX, dy = ys[i]-meanY;
+			covXX += dx*dx;
+			covXY += dx*dy;
+			covYY += dy*dy;
+		}
+		covXX /= ( n - 1 );
+		covXY /= ( n - 1 );
+		covYY /= ( n - 1 );
+
+		return eigendecomposeCovarianceMatrix( covXX, covXY, covYY, eigenvector1, eigenvector2, eigenvalues );
+	}
+
+	// Returns false if there is no single dominant direction.
+	// (Also used by IncrementalPCA.)
+	static boolean eigendecomposeCovarianceMatrix(
+		// input
+		double covXX, double covXY, double covYY,
+
+		// output
+		Vector2D eigenvector1,
+		Vector2D eigenvector2,
+		double [] eigenvalues
+	) {
 		// BEGIN: Perform eigendecomposition of the covariance matrix
 
 		double discriminant = Math.sqrt( (covXX-covYY)*(covXX-covYY) + 4*covXY*covXY );
@@ -348,8 +454,10 @@ public class Point2DUtil {
 		if ( Math.abs(eigenvalue1) <= Float.MIN_VALUE )
 			return false;
 
-		eigenvector1.copy( new Vector2D((float)covXY,(float)(eigenvalue1-covXX)).normalized() );
-		eigenvector2.copy( new Vector2D((float)covXY,(float)(eigenvalue2-covXX)).normalized() );
+		eigenvector1.copy( (float)covXY, (float)(eigenvalue1-covXX) );
+		eigenvector1.normalizedInto( eigenvector1 );
+		eigenvector2.copy( (float)covXY, (float)(eigenvalue2-covXX) );
+		eigenvector2.normalizedInto( eigenvector2 );
 
 		// END: Perform eigendecomposition of the covariance matrix
 
@@ -377,24 +485,33 @@ public class Point2DUtil {
 		Point2D P_old,
 		Point2D P_new
 	) {
-		Point2D centroid = computeCentroidOfPoints( points );
-		Vector2D v1 = Point2D.diff( P_old, centroid );
-		Vector2D v2 = Point2D.diff( P_new, centroid );
-		float rotationAngle = Vector2D.computeSignedAngle( v1, v2 );
-		float lengthToPreserve = v1.length();
-		Point2D newCentroid = Point2D.sum(
-			P_new,
-			Vector2D.mult( v2.normalized(), - lengthToPreserve )
-		);
-		Vector2D translation = Point2D.diff( newCentroid, centroid );
+		// This is called on every drag event, so it sticks to floats rather than allocating points and vectors.
+		float centroid_x = 0, centroid_y = 0;
+		for ( Point2D p : points ) {
+			centroid_x += p.x;
+			centroid_y += p.y;
+		}
+		if ( points.size() > 1 ) {
+			centroid_x /= points.size();
+			centroid_y /= points.size();
+		}
+		float v1_x = P_old.x - centroid_x, v1_y = P_old.y - centroid_y;
+		float v2_x = P_new.x - centroid_x, v2_y = P_new.y - centroid_y;
+		float rotationAngle = Vector2D.computeSignedAngle( v1_x, v1_y, v2_x, v2_y );
+		float lengthToPreserve = (float)Math.sqrt( v1_x*v1_x + v1_y*v1_y );
+		// the new centroid is P_new - lengthToPreserve * v2.normalized()
+		float v2_length = (float)Math.sqrt( v2_x*v2_x + v2_y*v2_y );
+		float k = v2_length > 0 ? lengthToPreserve / v2_length : lengthToPreserve;
+		float translation_x = ( P_new.x - k*v2_x ) - centroid_x;
+		float translation_y = ( P_new.y - k*v2_y ) - centroid_y;
 		float cosine = (float)Math.cos( rotationAngle );
 		float sine = (float)Math.sin( rotationAngle );
 
 		for ( Point2D p : points ) {
-			float relativeX = p.x() - centroid.x();
-			float relativeY = p.y() - centroid.y();
-			p.get()[0] = (cosine*relativeX - sine*relativeY) + translation.x() + centroid.x();
-			p.get()[1] = (sine*relativeX + cosine*relativeY) + translation.y() + centroid.y();
+			float relativeX = p.x - centroid_x;
+			float relativeY = p.y - centroid_y;
+			p.x = (cosine*relativeX - sine*relativeY) + translation_x + centroid_x;
+			p.y = (sine*relativeX + cosine*relativeY) + translation_y + centroid_y;
 		}
 	}
 
@@ -415,25 +532,27 @@ public class Point2DUtil {
 		// Output.  Caller must pass in a 1-element array used to pass value back to caller.
 		float [] scaleFactor
 	) {
+		// (in floats, as this is called on every drag event)
+
 		// Compute midpoints of each pair of points
-		Point2D M1 = Point2D.average( A_old, B_old );
-		Point2D M2 = Point2D.average( A_new, B_new );
+		float M1_x = (A_old.x+B_old.x)*0.5f, M1_y = (A_old.y+B_old.y)*0.5f;
+		float M2_x = (A_new.x+B_new.x)*0.5f, M2_y = (A_new.y+B_new.y)*0.5f;
 
 		// This is the translation that the points should undergo.
-		translation.copy( Point2D.diff( M2, M1 ) );
+		translation.copy( M2_x-M1_x, M2_y-M1_y );
 
 		// Compute a vector associated with each pair of points.
-		Vector2D v1 = Point2D.diff( A_old, B_old );
-		Vector2D v2 = Point2D.diff( A_new, B_new );
+		float v1_x = A_old.x-B_old.x, v1_y = A_old.y-B_old.y;
+		float v2_x = A_new.x-B_new.x, v2_y = A_new.y-B_new.y;
 
-		float v1_length = v1.length();
-		float v2_length = v2.length();
+		float v1_length = (float)Math.sqrt( v1_x*v1_x + v1_y*v1_y );
+		float v2_length = (float)Math.sqrt( v2_x*v2_x + v2_y*v2_y );
 		scaleFactor[0] = 1;
 		if ( v1_length > 0 && v2_length > 0 )
 			scaleFactor[0] = v2_length / v1_length;
-		rotationAngle[0] = Vector2D.computeSignedAngle( v1, v2 );
+		rotationAngle[0] = Vector2D.computeSignedAngle( v1_x, v1_y, v2_x, v2_y );
 
-		rotationCenter.copy( M2 );
+		rotationCenter.copy( M2_x, M2_y );
 	}
 
 	// This can be used to implement bimanual (2-handed) manipulation,
@@ -459,12 +578,46 @@ public class Point2DUtil {
 		for ( Point2D p : points ) {
 			float relativeX = ( p.x() + translation.x() ) - rotationCenter.x();
 			float relativeY = ( p.y() + translation.y() ) - rotationCenter.y();
-			p.get()[0] = scaleFactor[0]*(cosine*relativeX - sine*relativeY) + rotationCenter.x();
-			p.get()[1] = scaleFactor[0]*(sine*relativeX + cosine*relativeY) + rotationCenter.y();
+			p.x = scaleFactor[0]*(cosine*relativeX - sine*relativeY) + rotationCenter.x();
+			p.y = scaleFactor[0]*(sine*relativeX + cosine*relativeY) + rotationCenter.y();
 		}
 
 	}
 
+	// The same as above, for points in a buffer.
+	static public void transformPointsBasedOnDisplacementOfTwoPoints(
+		PointBuffer points,
+		Point2D A_old, Point2D B_old,
+		Point2D A_new, Point2D B_new
+	) {
+		// The transform of compute2DTransformBasedOnDisplacementOfTwoPoints(), in local variables.
+		float M1_x = (A_old.x+B_old.x)*0.5f, M1_y = (A_old.y+B_old.y)*0.5f;
+		float M2_x = (A_new.x+B_new.x)*0.5f, M2_y = (A_new.y+B_new.y)*0.5f;
+		float translation_x = M2_x-M1_x, translation_y = M2_y-M1_y;
+		float v1_x = A_old.x-B_old.x, v1_y = A_old.y-B_old.y;
+		float v2_x = A_new.x-B_new.x, v2_y = A_new.y-B_new.y;
+		float v1_length = length( v1_x, v1_y );
+		float v2_length = length( v2_x, v2_y );
+		float scaleFactor = 1;
+		if ( v1_length > 0 && v2_length > 0 )
+			scaleFactor = v2_length / v1_length;
+		float rotationAngle = Vector2D.computeSignedAngle( v1_x, v1_y, v2_x, v2_y );
+
+		float cosine = (float)Math.cos(rotationAngle);
+		float sine = (float)Math.sin(rotationAngle);
+		// folding the translation and the rotation center into a single offset
+		float offset_x = translation_x - M2_x, offset_y = translation_y - M2_y;
+
+		int n = points.size();
+		float [] xs = points.xs, ys = points.ys;
+		for ( int i = 0; i < n; ++i ) {
+			float relativeX = xs[i] + offset_x;
+			float relativeY = ys[i] + offset_y;
+			xs[i] = scaleFactor*(cosine*relativeX - sine*relativeY) + M2_x;
+			ys[i] = scaleFactor*(sine*relativeX + cosine*relativeY) + M2_y;
+		}
+	}
+
 
 
 	// Given a set of 2D orientations expressed as angles,
@@ -496,10 +649,8 @@ public class Point2DUtil {
 	) {
 		Vector2D averageRotationVector = new Vector2D();
 		for ( float angle : angles ) {
-			averageRotationVector = Vector2D.sum(
-				averageRotationVector,
-				new Vector2D( (float)Math.cos(angle), (float)Math.sin(angle) )
-			);
+			averageRotationVector.x += (float)Math.cos(angle);
+			averageRotationVector.y += (float)Math.sin(angle);
 		}
 		if ( averageRotationVector.length() == 0 )
 			return defaultAverageAngle;
@@ -0,0 +1,103 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+
+// A growable sequence of points stored as two parallel arrays of coordinates,
+// for the Point2DUtil algorithms to work on large point sets
+// without one object per point (see the PointBuffer overloads in Point2DUtil).
+// As with an ArrayList, the arrays have room for more points than size();
+// they are replaced when they grow, so don't hold on to them across calls to add().
+public class PointBuffer {
+
+	public float [] xs, ys;
+	private int size = 0;
+
+	// Scratch space for the Point2DUtil algorithms that write to this buffer,
+	// kept here so that reusing the buffer for their output also reuses it.
+	long [] sortKeys = new long[ 0 ];
+
+	public PointBuffer() {
+		this( 16 );
+	}
+
+	public PointBuffer( int capacity ) {
+		xs = new float[ capacity ];
+		ys = new float[ capacity ];
+	}
+
+	public PointBuffer( ArrayList< Point2D > points ) {
+		this( points.size() );
+		addAll( points );
+	}
+
+	public int size() { return size; }
+	public float x( int i ) { return xs[ i ]; }
+	public float y( int i ) { return ys[ i ]; }
+
+	public void clear() {
+		size = 0;
+	}
+
+	// Truncates the buffer to its first newSize points, or grows it to newSize points
+	// (the points added being whatever the arrays hold), e.g. after filling the arrays directly.
+	public void setSize( int newSize ) {
+		ensureCapacity( newSize );
+		size = newSize;
+	}
+
+	public void ensureCapacity( int capacity ) {
+		if ( capacity > xs.length ) {
+			int newCapacity = Math.max( capacity, 2 * xs.length );
+			xs = Arrays.copyOf( xs, newCapacity );
+			ys = Arrays.copyOf( ys, newCapacity );
+		}
+	}
+
+	public void add( float x, float y ) {
+		if ( size == xs.length )
+			ensureCapacity( size + 1 );
+		xs[ size ] = x;
+		ys[ size ] = y;
+		++ size;
+	}
+
+	public void add( Point2D p ) {
+		add( p.x, p.y );
+	}
+
+	public void addAll( ArrayList< Point2D > points ) {
+		ensureCapacity( size + points.size() );
+		for ( Point2D p : points ) {
+			xs[ size ] = p.x;
+			ys[ size ] = p.y;
+			++ size;
+		}
+	}
+
+	public void set( int i, float x, float y ) {
+		xs[ i ] = x;
+		ys[ i ] = y;
+	}
+
+	public Point2D getInto( int i, Point2D dest ) {
+		dest.copy( xs[ i ], ys[ i ] );
+		return dest;
+	}
+
+	public void copy( PointBuffer other ) {
+		ensureCapacity( other.size );
+		System.arraycopy( other.xs, 0, xs, 0, other.size );
+		System.arraycopy( other.ys, 0, ys, 0, other.size );
+		size = other.size;
+	}
+
+	public ArrayList< Point2D > toList() {
+		ArrayList< Point2D > points = new ArrayList< Point2D >( size );
+		for ( int i = 0; i < size; ++i )
+			points.add( new Point2D( xs[ i ], ys[ i ] ) );
+		return points;
+	}
+
+}
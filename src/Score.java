@@ -0,0 +1,335 @@
+
+import java.util.ArrayList;
+
+
+
+/*
+   The octave:
+      pitch class     English name     French name
+           0             C             do
+           1             C#/Db         do diese / re bemol
+           2             D             re
+           3             D#/Eb         re diese / mi bemol
+           4             E             mi
+           5             F             fa
+           6             F#/Gb         fa diese / sol bemol
+           7             G             sol
+           8             G#/Ab         sol diese / la bemol
+           9             A             la
+          10             A#/Bb         la diese / si bemol
+          11             B             si
+           0             C             do
+
+   A grand piano keyboard has 88 keys:
+                              Note Name     MIDI note number     Pitch class
+      lowest key (1st key):       A0            21                     9
+      middle C:                   C4            60                     0
+      highest key (88th key):     C8           108                     0
+ */
+
+
+class Score {
+	public static final int midiNoteNumberOfMiddleC = 60;
+
+	public int numPitches = 88;
+	public static final int pitchClassOfLowestPitch = 9; // 9==A==la
+	public final int midiNoteNumberOfLowestPitch = 21;
+	public int numBeats = 128;
+	public NoteGrid grid;
+
+	// The grid switches to sparse storage when its fill ratio drops below the first threshold,
+	// and back to dense storage when it rises above the second.
+	// The gap between the two keeps a score near a threshold from being converted back and forth.
+	public static final float maxFillRatioForSparseStorage = 0.01f;
+	public static final float minFillRatioForDenseStorage = 0.02f;
+
+	public static final int numPitchesInOctave = 12;
+	public String [] namesOfPitchClasses;
+	public boolean [] pitchClassesInMajorScale;
+	public boolean [] pitchClassesToEmphasizeInMajorScale;
+
+	private ArrayList< ScoreListener > listeners = new ArrayList< ScoreListener >();
+
+	public Score() {
+		grid = new SparseNoteGrid( numBeats, numPitches );
+
+		namesOfPitchClasses = new String[ numPitchesInOctave ];
+		namesOfPitchClasses[ 0] = "C";
+		namesOfPitchClasses[ 1] = "C#";
+		namesOfPitchClasses[ 2] = "D";
+		namesOfPitchClasses[ 3] = "D#";
+		namesOfPitchClasses[ 4] = "E";
+		namesOfPitchClasses[ 5] = "F";
+		namesOfPitchClasses[ 6] = "F#";
+		namesOfPitchClasses[ 7] = "G";
+		namesOfPitchClasses[ 8] = "G#";
+		namesOfPitchClasses[ 9] = "A";
+		namesOfPitchClasses[10] = "A#";
+		namesOfPitchClasses[11] = "B";
+
+		pitchClassesInMajorScale = new boolean[ numPitchesInOctave ];
+		pitchClassesInMajorScale[ 0] = true;
+		pitchClassesInMajorScale[ 1] = false;
+		pitchClassesInMajorScale[ 2] = true;
+		pitchClassesInMajorScale[ 3] = false;
+		pitchClassesInMajorScale[ 4] = true;
+		pitchClassesInMajorScale[ 5] = true;
+		pitchClassesInMajorScale[ 6] = false;
+		pitchClassesInMajorScale[ 7] = true;
+		pitchClassesInMajorScale[ 8] = false;
+		pitchClassesInMajorScale[ 9] = true;
+		pitchClassesInMajorScale[10] = false;
+		pitchClassesInMajorScale[11] = true;
+
+		pitchClassesToEmphasizeInMajorScale = new boolean[ numPitchesInOctave ];
+		pitchClassesToEmphasizeInMajorScale[ 0] = true;
+		pitchClassesToEmphasizeInMajorScale[ 1] = false;
+		pitchClassesToEmphasizeInMajorScale[ 2] = false;
+		pitchClassesToEmphasizeInMajorScale[ 3] = false;
+		pitchClassesToEmphasizeInMajorScale[ 4] = true;
+		pitchClassesToEmphasizeInMajorScale[ 5] = true;
+		pitchClassesToEmphasizeInMajorScale[ 6] = false;
+		pitchClassesToEmphasizeInMajorScale[ 7] = true;
+		pitchClassesToEmphasizeInMajorScale[ 8] = false;
+		pitchClassesToEmphasizeInMajorScale[ 9] = false;
+		pitchClassesToEmphasizeInMajorScale[10] = false;
+		pitchClassesToEmphasizeInMajorScale[11] = false;
+	}
+
+	// returns -1 if out of bounds
+	public int getMidiNoteNumberForMouseY( GraphicsWrapper gw, int mouse_y ) {
+		float y = gw.convertPixelsToWorldSpaceUnitsY( mouse_y );
+		int indexOfPitch = (int)(-y);
+		if ( 0 <= indexOfPitch && indexOfPitch < numPitches )
+			return indexOfPitch + midiNoteNumberOfLowestPitch;
+		return -1;
+	}
+	public void addListener( ScoreListener l ) {
+		listeners.add( l );
+	}
+	public void removeListener( ScoreListener l ) {
+		listeners.remove( l );
+	}
+
+	// Returns a sparse copy of the notes in the beats [fromBeat, toBeat),
+	// so that the listeners can be told about them once they have been removed.
+	private NoteGrid copyBeats( int fromBeat, int toBeat ) {
+		NoteGrid g = new SparseNoteGrid( numBeats, numPitches );
+		for ( int x = grid.nextNonEmptyBeat( fromBeat ); x >= 0 && x < toBeat; x = grid.nextNonEmptyBeat( x+1 ) )
+			g.setColumn( x, grid.getWord( x, 0 ), grid.getWord( x, 1 ) );
+		return g;
+	}
+
+	private void fireNotesRemoved( NoteGrid removed ) {
+		for ( int x = removed.nextNonEmptyBeat( 0 ); x >= 0; x = removed.nextNonEmptyBeat( x+1 ) ) {
+			for ( int y = removed.nextNoteInBeat( x, 0 ); y >= 0; y = removed.nextNoteInBeat( x, y+1 ) ) {
+				for ( ScoreListener l : listeners )
+					l.noteChanged( x, y, false );
+			}
+		}
+	}
+
+	// Turns on every note that is on in the given grid (e.g., a generated song),
+	// one note at a time, so the listeners are told about each note that changes.
+	public void addNotes( NoteGrid notes ) {
+		for ( int x = notes.nextNonEmptyBeat( 0 ); x >= 0 && x < numBeats; x = notes.nextNonEmptyBeat( x+1 ) )
+			for ( int y = notes.nextNoteInBeat( x, 0 ); y >= 0 && y < numPitches; y = notes.nextNoteInBeat( x, y+1 ) )
+				setNote( x, y, true );
+	}
+
+	// Returns true if the note changed.
+	public boolean setNote( int beat, int pitchIndex, boolean flag ) {
+		if ( ! grid.set( beat, pitchIndex, flag ) )
+			return false;
+		updateStorage();
+		for ( ScoreListener l : listeners )
+			l.noteChanged( beat, pitchIndex, flag );
+		return true;
+	}
+
+	public void clear() {
+		// the removed notes are only copied when someone is listening
+		NoteGrid removed = listeners.isEmpty() ? null : copyBeats( 0, numBeats );
+		grid.clear();
+		updateStorage();
+		if ( removed != null )
+			fireNotesRemoved( removed );
+	}
+
+	// Replaces all the notes at once, taking the length of the new grid,
+	// which the score takes ownership of.
+	public void setGrid( NoteGrid newGrid ) {
+		assert newGrid.getNumPitches() == numPitches;
+		int oldNumBeats = numBeats;
+		grid = newGrid;
+		numBeats = newGrid.getNumBeats();
+		updateStorage();
+		for ( ScoreListener l : listeners )
+			l.gridReplaced( oldNumBeats, numBeats );
+	}
+
+	// Converts the grid between dense and sparse storage if its fill ratio calls for it.
+	private void updateStorage() {
+		if ( grid.isMapped() )
+			return;
+		float fillRatio = grid.getFillRatio();
+		if ( grid.isDense() ) {
+			if ( fillRatio < maxFillRatioForSparseStorage )
+				grid = grid.copy( false );
+		}
+		else if ( fillRatio > minFillRatioForDenseStorage ) {
+			grid = grid.copy( true );
+		}
+	}
+
+	// This is the only way the length of the score should be changed.
+	// Notes in the beats that remain are kept, and the grid is resized in place,
+	// so this is cheap enough to call on every mouse drag event.
+	public void setNumBeats( int newNumBeats ) {
+		if ( newNumBeats < 1 )
+			newNumBeats = 1;
+		if ( newNumBeats == numBeats )
+			return;
+		int oldNumBeats = numBeats;
+		NoteGrid removed = listeners.isEmpty() || newNumBeats > oldNumBeats ? null : copyBeats( newNumBeats, oldNumBeats );
+		grid.setNumBeats( newNumBeats );
+		numBeats = newNumBeats;
+		updateStorage();
+		if ( removed != null )
+			fireNotesRemoved( removed );
+		for ( ScoreListener l : listeners )
+			l.numBeatsChanged( oldNumBeats, newNumBeats );
+	}
+
+	// returns -1 if out of bounds
+	public int getBeatForMouseX( GraphicsWrapper gw, int mouse_x ) {
+		float x = gw.convertPixelsToWorldSpaceUnitsX( mouse_x );
+		int indexOfBeat = (int)x;
+		if ( 0 <= indexOfBeat && indexOfBeat < numBeats )
+			return indexOfBeat;
+		return -1;
+	}
+
+	// Only the beats and pitches that intersect the visible part of world space are drawn,
+	// so that the cost of drawing depends on the size of the viewport
+	// rather than on the length of the score.
+	// Beat x covers [x,x+1] horizontally, and pitch y covers [-y-1,-y] vertically.
+	// These are set by computeVisibleRange().
+	private int minVisibleBeat, maxVisibleBeat; // max is exclusive
+	private int minVisiblePitch, maxVisiblePitch; // max is exclusive
+
+	private final AlignedRectangle2D viewport = new AlignedRectangle2D(); // reused on every repaint
+
+	// Returns false if nothing is visible.
+	private boolean computeVisibleRange( GraphicsWrapper gw ) {
+		gw.getViewportInWorldSpaceUnitsInto( viewport );
+		minVisibleBeat = Math.max( 0, (int)Math.floor( viewport.getMin().x ) );
+		maxVisibleBeat = Math.min( numBeats, (int)Math.ceil( viewport.getMax().x ) );
+		minVisiblePitch = Math.max( 0, (int)Math.floor( - viewport.getMax().y ) );
+		maxVisiblePitch = Math.min( numPitches, (int)Math.ceil( - viewport.getMin().y ) );
+		return minVisibleBeat < maxVisibleBeat && minVisiblePitch < maxVisiblePitch;
+	}
+
+	private void drawPitchLane( GraphicsWrapper gw, int y, boolean highlightMajorCScale ) {
+		int pitchClass = ( y + pitchClassOfLowestPitch ) % numPitchesInOctave;
+		int midiNoteNumber = y + midiNoteNumberOfLowestPitch;
+		int widthOfBeats = maxVisibleBeat - minVisibleBeat;
+		if ( midiNoteNumber == midiNoteNumberOfMiddleC ) {
+			gw.setColor( 1, 1, 1 );
+			gw.fillRect( minVisibleBeat, -y-0.7f, widthOfBeats, 0.4f );
+		}
+		else if ( pitchClass == 0 && highlightMajorCScale ) {
+			gw.setColor( 1, 1, 1 );
+			gw.fillRect( minVisibleBeat, -y-0.6f, widthOfBeats, 0.2f );
+		}
+		else if ( pitchClassesToEmphasizeInMajorScale[ pitchClass ] && highlightMajorCScale ) {
+			gw.setColor( 0.6f, 0.6f, 0.6f );
+			gw.fillRect( minVisibleBeat, -y-0.6f, widthOfBeats, 0.2f );
+		}
+		else if ( pitchClassesInMajorScale[ pitchClass ] || ! highlightMajorCScale ) {
+			gw.setColor( 0.6f, 0.6f, 0.6f );
+			gw.fillRect( minVisibleBeat, -y-0.55f, widthOfBeats, 0.1f );
+		}
+	}
+
+	private void drawBeatLine( GraphicsWrapper gw, int x ) {
+		if ( x % 4 == 0 ) {
+			gw.setColor( 0.6f, 0.6f, 0.6f );
+			gw.fillRect( x+0.45f, -maxVisiblePitch, 0.1f, maxVisiblePitch - minVisiblePitch );
+		}
+	}
+
+	// Draws the pitch lanes and beat lines.
+	// These only depend on the viewport, numBeats, and highlightMajorCScale,
+	// so the caller may cache the result.
+	public void drawBackground(
+			GraphicsWrapper gw,
+			boolean highlightMajorCScale
+			) {
+		if ( ! computeVisibleRange( gw ) )
+			return;
+		for ( int y = minVisiblePitch; y < maxVisiblePitch; y++ )
+			drawPitchLane( gw, y, highlightMajorCScale );
+		for ( int x = minVisibleBeat; x < maxVisibleBeat; x++ )
+			drawBeatLine( gw, x );
+	}
+
+	// Draws the mouse cursor and time cursor on top of the background,
+	// redrawing the parts of the background that they would otherwise hide.
+	public void drawCursors(
+			GraphicsWrapper gw,
+			boolean highlightMajorCScale,
+			int midiNoteNumber1ToHilite,
+			int beat1ToHilite,
+			int beat2ToHilite
+			) {
+		if ( ! computeVisibleRange( gw ) )
+			return;
+		int y = midiNoteNumber1ToHilite - midiNoteNumberOfLowestPitch;
+		if ( minVisiblePitch <= y && y < maxVisiblePitch ) { // mouse cursor
+			gw.setColor( 0, 1, 1 );
+			gw.fillRect( minVisibleBeat, -y-0.8f, maxVisibleBeat - minVisibleBeat, 0.6f );
+			drawPitchLane( gw, y, highlightMajorCScale );
+		}
+		if ( minVisibleBeat <= beat1ToHilite && beat1ToHilite < maxVisibleBeat ) { // mouse cursor
+			gw.setColor( 0, 1, 1 );
+			gw.fillRect( beat1ToHilite+0.2f, -maxVisiblePitch, 0.6f, maxVisiblePitch - minVisiblePitch );
+			if ( beat1ToHilite != beat2ToHilite )
+				drawBeatLine( gw, beat1ToHilite );
+		}
+		if ( minVisibleBeat <= beat2ToHilite && beat2ToHilite < maxVisibleBeat ) { // time cursor
+			gw.setColor( 1, 0, 0 );
+			gw.fillRect( beat2ToHilite+0.45f, -maxVisiblePitch, 0.1f, maxVisiblePitch - minVisiblePitch );
+		}
+	}
+
+	public void drawNotes( GraphicsWrapper gw ) {
+		if ( ! computeVisibleRange( gw ) )
+			return;
+		gw.setColor( 0, 0, 0 );
+		for ( int x = grid.nextNonEmptyBeat( minVisibleBeat ); x >= 0 && x < maxVisibleBeat; x = grid.nextNonEmptyBeat( x+1 ) ) {
+			for ( int y = grid.nextNoteInBeat( x, minVisiblePitch ); y >= 0 && y < maxVisiblePitch; y = grid.nextNoteInBeat( x, y+1 ) )
+				gw.fillRect( x+0.3f, -y-0.7f, 0.4f, 0.4f );
+		}
+	}
+
+	public void draw(
+			GraphicsWrapper gw,
+			boolean highlightMajorCScale,
+			int midiNoteNumber1ToHilite,
+			int beat1ToHilite,
+			int beat2ToHilite
+			) {
+		drawBackground( gw, highlightMajorCScale );
+		drawCursors( gw, highlightMajorCScale, midiNoteNumber1ToHilite, beat1ToHilite, beat2ToHilite );
+		drawNotes( gw );
+	}
+
+	public AlignedRectangle2D getBoundingRectangle() {
+		return new AlignedRectangle2D(
+				new Point2D(0,-numPitches),
+				new Point2D(numBeats,0)
+				);
+	}
+
+}
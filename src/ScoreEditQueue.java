@@ -0,0 +1,146 @@
+
+import javax.swing.SwingUtilities;
+
+// Hands the edits made to a Score on the event dispatch thread over to the playback thread,
+// without either thread ever blocking the other.
+//
+// The playback thread reads its own copy of the grid, returned by poll().
+// Each edit is published through a single-producer, single-consumer ring buffer:
+// the event dispatch thread (the only writer) stores an entry and then advances writeIndex,
+// the playback thread (the only reader) reads entries up to writeIndex and then advances readIndex.
+// Both indices are volatile, which is all the ordering the two threads need.
+//
+// If the ring is full (e.g., after loading a file or clearing a large score),
+// the remaining edits are not queued; instead, once the current event has been handled,
+// a copy of the whole grid is published as a snapshot, which replaces the reader's copy
+// along with every entry queued before it.
+class ScoreEditQueue implements ScoreListener {
+
+	public static final int CAPACITY = 4096; // must be a power of 2
+	private static final int MASK = CAPACITY - 1;
+
+	// An entry is a long, with the kind of edit in the top byte:
+	//    - SET_NOTE: the beat in the low 32 bits, the pitch index in the next 8, whether it's on in the next;
+	//    - SET_NUM_BEATS: the new number of beats in the low 32 bits.
+	// The same encoding is used by ScoreHistory and ScoreJournal; the journal keeps it on disk,
+	// so changing it means changing the journal's version.
+	static final long SET_NOTE = 1L << 56;
+	static final long SET_NUM_BEATS = 2L << 56;
+	static final long KIND_MASK = 0xFFL << 56;
+	private static final long IS_ON = 1L << 40;
+
+	static long encodeSetNote( int beat, int pitchIndex, boolean isOn ) {
+		return SET_NOTE | ( isOn ? IS_ON : 0 ) | ( (long)pitchIndex << 32 ) | beat;
+	}
+	static long encodeSetNumBeats( int numBeats ) {
+		return SET_NUM_BEATS | numBeats;
+	}
+	static long getKind( long entry ) { return entry & KIND_MASK; }
+	static int getBeat( long entry ) { return (int)entry; }
+	static int getPitchIndex( long entry ) { return (int)( entry >>> 32 ) & 0xFF; }
+	static boolean isOn( long entry ) { return ( entry & IS_ON ) != 0; }
+	static int getNumBeats( long entry ) { return (int)entry; }
+
+	private final long [] ring = new long[ CAPACITY ];
+	private volatile long writeIndex = 0; // written only by the producer
+	private volatile long readIndex = 0; // written only by the consumer
+
+	private static class Snapshot {
+		final NoteGrid grid;
+		final long writeIndex; // the entries before this index are already in the grid
+		Snapshot( NoteGrid grid, long writeIndex ) {
+			this.grid = grid;
+			this.writeIndex = writeIndex;
+		}
+	}
+	private volatile Snapshot snapshot;
+
+	// Producer side.
+	private final Score score;
+	private boolean isSnapshotPending = false;
+	private final Runnable snapshotPublisher = new Runnable() {
+		public void run() {
+			publishSnapshot();
+		}
+	};
+
+	// Consumer side.
+	private Snapshot adoptedSnapshot = null;
+	private NoteGrid grid = null;
+
+	// Must be called from the event dispatch thread.
+	// The queue starts out with a snapshot of the score, and listens to it until detached.
+	public ScoreEditQueue( Score score ) {
+		this.score = score;
+		publishSnapshot();
+		score.addListener( this );
+	}
+
+	public void detach() {
+		score.removeListener( this );
+	}
+
+	// ================ producer ================
+
+	private void publishSnapshot() {
+		isSnapshotPending = false;
+		snapshot = new Snapshot( score.grid.copy( score.grid.isDense() ), writeIndex );
+	}
+
+	private void offer( long entry ) {
+		if ( isSnapshotPending )
+			return; // the snapshot will include this edit
+		long w = writeIndex;
+		if ( w - readIndex == CAPACITY ) {
+			isSnapshotPending = true;
+			SwingUtilities.invokeLater( snapshotPublisher );
+			return;
+		}
+		ring[ (int)w & MASK ] = entry;
+		writeIndex = w + 1;
+	}
+
+	public void noteChanged( int beat, int pitchIndex, boolean isOn ) {
+		offer( encodeSetNote( beat, pitchIndex, isOn ) );
+	}
+
+	public void numBeatsChanged( int oldNumBeats, int newNumBeats ) {
+		offer( encodeSetNumBeats( newNumBeats ) );
+	}
+
+	public void gridReplaced( int oldNumBeats, int newNumBeats ) {
+		publishSnapshot();
+	}
+
+	// ================ consumer ================
+
+	// Applies the edits published so far, and returns the reader's copy of the grid.
+	// Must only be called from the playback thread.
+	public NoteGrid poll() {
+		// writeIndex is read before the snapshot, so that every entry read below
+		// was queued before, or after, the snapshot being used
+		long w = writeIndex;
+		Snapshot s = snapshot;
+		long r = readIndex;
+		if ( s != adoptedSnapshot ) {
+			adoptedSnapshot = s;
+			grid = s.grid;
+			r = Math.max( r, s.writeIndex );
+		}
+		for ( ; r < w; ++r ) {
+			long entry = ring[ (int)r & MASK ];
+			if ( getKind( entry ) == SET_NOTE ) {
+				int beat = getBeat( entry );
+				if ( beat < grid.getNumBeats() )
+					grid.set( beat, getPitchIndex( entry ), isOn( entry ) );
+			}
+			else {
+				grid.setNumBeats( getNumBeats( entry ) );
+			}
+		}
+		readIndex = r;
+		return grid;
+	}
+
+}
+
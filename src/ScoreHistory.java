@@ -0,0 +1,208 @@
+
+import java.util.Arrays;
+
+// Undo and redo for a Score.
+//
+// Instead of copying the grid, the history records the changes made to the score, as reported
+// to its listeners, as one long per change in a primitive array:
+// a note turned on or off (so a cell set, a range cleared, or a song generated
+// costs one record per note that actually changed), or the length changed (two records).
+// The changes made between beginEdit() and endEdit() (e.g., a whole drag stroke, or a menu command)
+// form a single entry, undone and redone as a whole; a change made outside of them is an entry of its own.
+// Undoing or redoing an entry goes through the score, so the other listeners see the changes,
+// and costs time proportional to the number of records in the entry.
+//
+// The history holds at most maxNumRecords records; the oldest entries are dropped to make room.
+// Replacing the whole grid (e.g., loading a file) can't be undone, and clears the history.
+class ScoreHistory implements ScoreListener {
+
+	public static final int DEFAULT_MAX_NUM_RECORDS = 1 << 20; // 8 MB
+
+	// A record is encoded as an entry of a ScoreEditQueue (a SET_NOTE),
+	// or as one of two kinds of its own, after those of ScoreEditQueue, for a change of length.
+	private static final long NUM_BEATS_FROM = 3L << 56; // always followed by a NUM_BEATS_TO record
+	private static final long NUM_BEATS_TO = 4L << 56;
+
+	// A stack of entries, each a range of records.
+	private static class EditLog {
+		long [] records = new long[ 256 ];
+		int numRecords = 0;
+		int [] entryEnds = new int[ 16 ]; // entry i is made of the records [entryEnds[i-1], entryEnds[i])
+		int numEntries = 0;
+
+		int getEntryStart( int entry ) {
+			return entry == 0 ? 0 : entryEnds[ entry-1 ];
+		}
+		void add( long record ) {
+			if ( numRecords == records.length )
+				records = Arrays.copyOf( records, 2 * records.length );
+			records[ numRecords++ ] = record;
+		}
+		// Makes the records added since the last entry an entry, if there are any.
+		void closeEntry() {
+			if ( numRecords == getEntryStart( numEntries ) )
+				return;
+			if ( numEntries == entryEnds.length )
+				entryEnds = Arrays.copyOf( entryEnds, 2 * entryEnds.length );
+			entryEnds[ numEntries++ ] = numRecords;
+		}
+		void removeLastEntry() {
+			numRecords = getEntryStart( --numEntries );
+		}
+		// Drops the oldest entries, keeping the records of the open entry.
+		void dropOldestEntries( int numEntriesToDrop ) {
+			int numRecordsToDrop = entryEnds[ numEntriesToDrop-1 ];
+			System.arraycopy( records, numRecordsToDrop, records, 0, numRecords - numRecordsToDrop );
+			numRecords -= numRecordsToDrop;
+			numEntries -= numEntriesToDrop;
+			for ( int i = 0; i < numEntries; ++i )
+				entryEnds[ i ] = entryEnds[ i + numEntriesToDrop ] - numRecordsToDrop;
+		}
+		void clear() {
+			numRecords = 0;
+			numEntries = 0;
+		}
+	}
+
+	private final Score score;
+	private int maxNumRecords;
+	private final EditLog undoLog = new EditLog();
+	private final EditLog redoLog = new EditLog();
+	private boolean isEditOpen = false;
+	private boolean isEditDiscarded = false; // the open entry grew too large to be kept
+	private boolean isReplaying = false;
+
+	public ScoreHistory( Score score, int maxNumRecords ) {
+		this.score = score;
+		this.maxNumRecords = maxNumRecords;
+		score.addListener( this );
+	}
+
+	public void setMaxNumRecords( int maxNumRecords ) {
+		this.maxNumRecords = maxNumRecords;
+		enforceMaxNumRecords();
+	}
+
+	// Starts an entry that groups all the changes made until endEdit().
+	public void beginEdit() {
+		endEdit(); // in case the previous one was never ended (e.g., a lost mouse release)
+		isEditOpen = true;
+	}
+
+	public void endEdit() {
+		undoLog.closeEntry();
+		isEditOpen = false;
+		isEditDiscarded = false;
+	}
+
+	public boolean canUndo() { return undoLog.numEntries > 0 || undoLog.numRecords > 0; }
+	public boolean canRedo() { return redoLog.numEntries > 0; }
+
+	// ================ recording ================
+
+	private void record( long record ) {
+		if ( isReplaying )
+			return;
+		redoLog.clear();
+		if ( ! isEditDiscarded ) {
+			undoLog.add( record );
+			enforceMaxNumRecords();
+		}
+		if ( ! isEditOpen )
+			endEdit();
+	}
+
+	private void enforceMaxNumRecords() {
+		if ( undoLog.numRecords <= maxNumRecords )
+			return;
+		if ( undoLog.numEntries > 0 ) {
+			// drop about a quarter of the entries at once, so the records aren't shifted on every change
+			undoLog.dropOldestEntries( Math.max( 1, undoLog.numEntries / 4 ) );
+			enforceMaxNumRecords();
+		}
+		else {
+			// The open entry alone is too large, so it can't be undone,
+			// and neither can anything before it.
+			undoLog.clear();
+			isEditDiscarded = true;
+		}
+	}
+
+	public void noteChanged( int beat, int pitchIndex, boolean isOn ) {
+		record( ScoreEditQueue.encodeSetNote( beat, pitchIndex, isOn ) );
+	}
+
+	public void numBeatsChanged( int oldNumBeats, int newNumBeats ) {
+		// both records go in the same entry
+		boolean wasEditOpen = isEditOpen;
+		isEditOpen = true;
+		record( NUM_BEATS_FROM | oldNumBeats );
+		isEditOpen = wasEditOpen;
+		record( NUM_BEATS_TO | newNumBeats );
+	}
+
+	public void gridReplaced( int oldNumBeats, int newNumBeats ) {
+		if ( isReplaying )
+			return;
+		undoLog.clear();
+		redoLog.clear();
+		isEditDiscarded = isEditOpen;
+	}
+
+	// ================ undoing and redoing ================
+
+	// Undoes the last entry (closing it first if it's still open), and returns true if there was one.
+	public boolean undo() {
+		undoLog.closeEntry();
+		if ( undoLog.numEntries == 0 )
+			return false;
+		int start = undoLog.getEntryStart( undoLog.numEntries - 1 );
+		isReplaying = true;
+		try {
+			// the changes are undone in reverse order
+			for ( int i = undoLog.numRecords - 1; i >= start; --i ) {
+				long r = undoLog.records[ i ];
+				if ( ScoreEditQueue.getKind( r ) == ScoreEditQueue.SET_NOTE )
+					score.setNote( ScoreEditQueue.getBeat( r ), ScoreEditQueue.getPitchIndex( r ), ! ScoreEditQueue.isOn( r ) );
+				else if ( ScoreEditQueue.getKind( r ) == NUM_BEATS_TO )
+					score.setNumBeats( ScoreEditQueue.getNumBeats( undoLog.records[ --i ] ) );
+			}
+		}
+		finally {
+			isReplaying = false;
+		}
+		for ( int i = start; i < undoLog.numRecords; ++i )
+			redoLog.add( undoLog.records[ i ] );
+		redoLog.closeEntry();
+		undoLog.removeLastEntry();
+		return true;
+	}
+
+	// Redoes the last entry undone, and returns true if there was one.
+	public boolean redo() {
+		undoLog.closeEntry();
+		if ( redoLog.numEntries == 0 )
+			return false;
+		int start = redoLog.getEntryStart( redoLog.numEntries - 1 );
+		isReplaying = true;
+		try {
+			for ( int i = start; i < redoLog.numRecords; ++i ) {
+				long r = redoLog.records[ i ];
+				if ( ScoreEditQueue.getKind( r ) == ScoreEditQueue.SET_NOTE )
+					score.setNote( ScoreEditQueue.getBeat( r ), ScoreEditQueue.getPitchIndex( r ), ScoreEditQueue.isOn( r ) );
+				else if ( ScoreEditQueue.getKind( r ) == NUM_BEATS_TO )
+					score.setNumBeats( ScoreEditQueue.getNumBeats( r ) );
+			}
+		}
+		finally {
+			isReplaying = false;
+		}
+		for ( int i = start; i < redoLog.numRecords; ++i )
+			undoLog.add( redoLog.records[ i ] );
+		undoLog.closeEntry();
+		redoLog.removeLastEntry();
+		return true;
+	}
+
+}
+
@@ -0,0 +1,287 @@
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+// Autosaves a Score, so that the work done since the last save isn't lost if the application dies.
+//
+// The autosave is a snapshot of the score, in the native format (see ScoreSprFile),
+// followed by an append-only journal of every change made to the score since the snapshot,
+// as fed by the score's listeners (so it covers drawing, clearing, generating, and loading alike).
+// A journal record is a single long, encoded as an entry of a ScoreEditQueue (see ScoreEditQueue.encodeSetNote()).
+//
+// Records are queued on the event dispatch thread, and handed over in batches
+// (every FLUSH_INTERVAL_MILLISECONDS, or sooner if many are queued) to the I/O thread,
+// which appends them to the journal and forces them to disk, one fsync per batch.
+// Once the journal holds more than MAX_NUM_JOURNAL_RECORDS records,
+// or when the whole grid is replaced, it is compacted:
+// a new snapshot of the score is written, and the journal is emptied.
+//
+// On startup, recover() reads the snapshot and replays the journal over it.
+// The snapshot is read into memory rather than mapped, since the I/O thread replaces the file
+// at the next compaction, and a mapped file can't be replaced on every platform (e.g., Windows).
+//
+// The snapshot and the journal each have a generation number in their header,
+// the journal only being replayed over the snapshot of the same generation.
+// A compaction writes the new snapshot (with a new generation) next to the old one,
+// forces it to disk, moves it over the old one, and only then starts a new journal of the same generation;
+// so if the application dies in between, the old journal is ignored rather than replayed
+// over a newer snapshot, which it would take back to an older state.
+// The records pending at a compaction are in the new snapshot, but are only dropped once it is on disk:
+// if the compaction fails, they are appended to the old journal instead,
+// and the compaction is tried again at the next flush.
+class ScoreJournal implements ScoreListener {
+
+	public static final int FLUSH_INTERVAL_MILLISECONDS = 1000;
+	public static final int MAX_NUM_PENDING_RECORDS = 4096;
+	public static final int MAX_NUM_JOURNAL_RECORDS = 1 << 16;
+
+	// The journal's header: "SPRJ" and the version, then the generation.
+	private static final long MAGIC = 0x5350524A00000002L;
+	private static final int HEADER_LENGTH = 16;
+
+	private final Score score;
+	private final ExecutorService ioExecutor;
+	private final File snapshotFile;
+	private final File journalFile;
+
+	// Event dispatch thread side.
+	private long [] pendingRecords = new long[ MAX_NUM_PENDING_RECORDS ];
+	private int numPendingRecords = 0;
+	private int numJournalRecords = 0; // since the last compaction, including those pending
+	private final Timer flushTimer;
+
+	// I/O thread side.
+	private FileChannel channel = null;
+	private long generation = 0; // of the snapshot on disk; 0 until the first compaction
+	private volatile boolean isCompactionNeeded = false; // the last compaction failed
+
+	public ScoreJournal( Score score, File directory, ExecutorService ioExecutor ) {
+		this.score = score;
+		this.ioExecutor = ioExecutor;
+		snapshotFile = new File( directory, "autosave" + ScoreSprFile.EXTENSION );
+		journalFile = new File( directory, "autosave.journal" );
+		flushTimer = new Timer( FLUSH_INTERVAL_MILLISECONDS, new ActionListener() {
+			public void actionPerformed( ActionEvent e ) {
+				flush();
+			}
+		} );
+	}
+
+	// If the last session ended without calling discard(), puts its score back,
+	// as of the last batch it flushed, and returns true.
+	// Must be called from the event dispatch thread, before start().
+	public boolean recover() throws IOException {
+		if ( ! snapshotFile.exists() )
+			return false;
+		NoteGrid grid = ScoreSprFile.read( snapshotFile );
+		if ( grid.getNumPitches() != score.numPitches )
+			throw new IOException( snapshotFile + " has " + grid.getNumPitches() + " pitches instead of " + score.numPitches );
+		long snapshotGeneration = ScoreSprFile.readGeneration( snapshotFile );
+		if ( journalFile.exists() ) {
+			ByteBuffer b = ByteBuffer.wrap( Files.readAllBytes( journalFile.toPath() ) );
+			if ( b.limit() >= HEADER_LENGTH && b.getLong( 0 ) == MAGIC && b.getLong( 8 ) == snapshotGeneration ) {
+				// a partial record at the end was being written when the application died, and is ignored
+				for ( int i = HEADER_LENGTH; i + 8 <= b.limit(); i += 8 ) {
+					long record = b.getLong( i );
+					long kind = ScoreEditQueue.getKind( record );
+					if ( kind == ScoreEditQueue.SET_NOTE ) {
+						int beat = ScoreEditQueue.getBeat( record );
+						int pitchIndex = ScoreEditQueue.getPitchIndex( record );
+						if ( beat < grid.getNumBeats() && pitchIndex < grid.getNumPitches() )
+							grid.set( beat, pitchIndex, ScoreEditQueue.isOn( record ) );
+					}
+					else if ( kind == ScoreEditQueue.SET_NUM_BEATS ) {
+						grid.setNumBeats( Math.max( ScoreEditQueue.getNumBeats( record ), 1 ) );
+					}
+					else {
+						break; // past the last record that made it to disk
+					}
+				}
+			}
+		}
+		score.setGrid( grid );
+		return true;
+	}
+
+	// Starts journaling the score, from a fresh snapshot of it.
+	// Must be called from the event dispatch thread.
+	public void start() {
+		score.addListener( this );
+		compact();
+		flushTimer.start();
+	}
+
+	// Stops journaling and deletes the autosave, waiting for the I/O thread to be done with it.
+	// To be called when the application is closed on purpose.
+	public void discard() {
+		flushTimer.stop();
+		score.removeListener( this );
+		numPendingRecords = 0;
+		Future< ? > deletion = ioExecutor.submit( new Runnable() {
+			public void run() {
+				closeChannel();
+				journalFile.delete();
+				snapshotFile.delete();
+			}
+		} );
+		try {
+			deletion.get();
+		}
+		catch ( Exception e ) {
+			System.out.println( "Exception caught " + e.toString() );
+		}
+	}
+
+	// ================ event dispatch thread ================
+
+	private void append( long record ) {
+		pendingRecords[ numPendingRecords++ ] = record;
+		++ numJournalRecords;
+		if ( numJournalRecords > MAX_NUM_JOURNAL_RECORDS )
+			compact();
+		else if ( numPendingRecords == MAX_NUM_PENDING_RECORDS )
+			flush();
+	}
+
+	public void noteChanged( int beat, int pitchIndex, boolean isOn ) {
+		append( ScoreEditQueue.encodeSetNote( beat, pitchIndex, isOn ) );
+	}
+
+	public void numBeatsChanged( int oldNumBeats, int newNumBeats ) {
+		append( ScoreEditQueue.encodeSetNumBeats( newNumBeats ) );
+	}
+
+	public void gridReplaced( int oldNumBeats, int newNumBeats ) {
+		compact();
+	}
+
+	// Hands the pending records over to the I/O thread
+	// (or compacts instead, if the last compaction failed).
+	private void flush() {
+		if ( isCompactionNeeded ) {
+			compact();
+			return;
+		}
+		if ( numPendingRecords == 0 )
+			return;
+		final long [] batch = Arrays.copyOf( pendingRecords, numPendingRecords );
+		numPendingRecords = 0;
+		ioExecutor.execute( new Runnable() {
+			public void run() {
+				try {
+					appendToJournal( batch );
+				}
+				catch ( IOException e ) {
+					System.out.println( "Exception caught " + e.toString() );
+				}
+			}
+		} );
+	}
+
+	// Replaces the snapshot with the current score, and empties the journal.
+	private void compact() {
+		isCompactionNeeded = false;
+		// the pending records are in the snapshot, but are kept until the snapshot is on disk
+		final long [] batch = Arrays.copyOf( pendingRecords, numPendingRecords );
+		numPendingRecords = 0;
+		numJournalRecords = 0;
+		final NoteGrid snapshot = score.grid.copy( false );
+		ioExecutor.execute( new Runnable() {
+			public void run() {
+				try {
+					writeSnapshot( snapshot );
+				}
+				catch ( IOException e ) {
+					System.out.println( "Exception caught " + e.toString() );
+					isCompactionNeeded = true;
+					try {
+						// if the old snapshot is still in place, its journal goes on
+						appendToJournal( batch );
+					}
+					catch ( IOException e2 ) {
+						System.out.println( "Exception caught " + e2.toString() );
+					}
+				}
+			}
+		} );
+	}
+
+	// ================ I/O thread ================
+
+	private void appendToJournal( long [] records ) throws IOException {
+		ByteBuffer b = ByteBuffer.allocate( 8 * records.length );
+		b.asLongBuffer().put( records );
+		FileChannel fc = openChannel();
+		while ( b.hasRemaining() )
+			fc.write( b );
+		fc.force( false );
+	}
+
+	private void writeSnapshot( NoteGrid snapshot ) throws IOException {
+		// The generation must differ from those of the files already there,
+		// including those left by an earlier session.
+		if ( generation == 0 )
+			generation = Math.max( snapshotFile.exists() ? ScoreSprFile.readGeneration( snapshotFile ) : 0, readJournalGeneration() );
+		long newGeneration = generation + 1;
+
+		File directory = snapshotFile.getParentFile();
+		if ( directory != null )
+			directory.mkdirs();
+		File temporaryFile = new File( snapshotFile.getPath() + ".tmp" );
+		ScoreSprFile.write( snapshot, temporaryFile, newGeneration ); // forced to disk before the move
+		Files.move( temporaryFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+		generation = newGeneration;
+
+		// Until its header is written, the journal doesn't match the snapshot, and is ignored.
+		FileChannel fc = openChannel();
+		fc.truncate( 0 );
+		ByteBuffer b = ByteBuffer.allocate( HEADER_LENGTH );
+		b.putLong( 0, MAGIC );
+		b.putLong( 8, generation );
+		while ( b.hasRemaining() )
+			fc.write( b, b.position() );
+		fc.position( HEADER_LENGTH );
+		fc.force( false );
+	}
+
+	// Returns the generation in the journal's header, or 0 if it has none.
+	private long readJournalGeneration() throws IOException {
+		if ( ! journalFile.exists() )
+			return 0;
+		ByteBuffer b = ByteBuffer.wrap( Files.readAllBytes( journalFile.toPath() ) );
+		return b.limit() >= HEADER_LENGTH && b.getLong( 0 ) == MAGIC ? b.getLong( 8 ) : 0;
+	}
+
+	private FileChannel openChannel() throws IOException {
+		if ( channel == null || ! channel.isOpen() ) {
+			channel = FileChannel.open( journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE );
+			channel.position( channel.size() );
+		}
+		return channel;
+	}
+
+	private void closeChannel() {
+		try {
+			if ( channel != null )
+				channel.close();
+		}
+		catch ( IOException e ) {
+			System.out.println( "Exception caught " + e.toString() );
+		}
+		channel = null;
+	}
+
+}
+
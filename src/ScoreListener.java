@@ -0,0 +1,19 @@
+
+// Is told about every change made to the contents of a Score,
+// so that state derived from the score (e.g., a Sequence being played)
+// can be updated incrementally instead of being rebuilt.
+interface ScoreListener {
+
+	// Called after a single note was turned on or off.
+	public void noteChanged( int beat, int pitchIndex, boolean isOn );
+
+	// Called after the length of the score changed.
+	// If it shrank, noteChanged() has already been called for each note that was cut off.
+	public void numBeatsChanged( int oldNumBeats, int newNumBeats );
+
+	// Called after the whole grid was replaced (e.g., by loading a file),
+	// instead of once per note that changed.
+	public void gridReplaced( int oldNumBeats, int newNumBeats );
+
+}
+
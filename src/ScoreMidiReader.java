@@ -0,0 +1,306 @@
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+// Reads the notes of a Standard MIDI File into a NoteGrid.
+// The file is memory-mapped, and its track chunks are decoded in place,
+// each note on being set directly in the grid,
+// so nothing is allocated per event (no Sequence, Track, MidiEvent, or MidiMessage).
+//
+// When there are several tracks, they are decoded in parallel on the common fork-join pool,
+// each into its own SparseNoteGrid (a track's events come in tick order, so its notes are appended),
+// and the partial grids are then ORed into the given grid.
+// Only the grid passed in is written to, and only by the calling thread,
+// so it can be handed over to the event dispatch thread once read() returns.
+//
+// The result is the same as what loading through MidiSystem.getSequence() did:
+//    - every note on (whatever its channel, and even with a velocity of 0) sets a note,
+//      at beat (tick / TICKS_PER_BEAT) in raw ticks of its track, with its key as the pitch index;
+//    - notes outside the grid are ignored;
+//    - files are accepted or rejected following the same rules as the JDK's parser
+//      (e.g., a truncated last track is silently dropped, but a truncated event is an error),
+//      except that the number of tracks is read as unsigned, so that a file with more than 32767 tracks
+//      isn't taken to have none.
+class ScoreMidiReader {
+
+	public static final int TICKS_PER_BEAT = ScoreMidiWriter.TICKS_PER_BEAT;
+
+	private static final int MTHD = 0x4d546864; // "MThd"
+	private static final int MTRK = 0x4d54726b; // "MTrk"
+
+	// The bytes being decoded, and the position and end of the track chunk being decoded.
+	private final ByteBuffer b;
+	private int pos, end;
+
+	// Is told each time a track has been decoded, and asked before each track whether to go on.
+	// Called from whichever thread decodes the track, possibly from several threads at once.
+	public interface ProgressListener {
+		public void trackDecoded( int numTracksDecoded, int numTracks );
+		// Once this returns true, the tracks not yet started are skipped, and read() throws an InterruptedIOException.
+		public boolean isCanceled();
+	}
+
+	private ScoreMidiReader( ByteBuffer b, int pos, int end ) {
+		this.b = b;
+		this.pos = pos;
+		this.end = end;
+	}
+
+	public static void read( File file, NoteGrid grid ) throws IOException, InvalidMidiDataException {
+		read( file, grid, null );
+	}
+
+	public static void read( File file, NoteGrid grid, ProgressListener listener ) throws IOException, InvalidMidiDataException {
+		FileChannel fc = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+		try {
+			// the mapping stays valid after the channel is closed
+			read( fc.map( FileChannel.MapMode.READ_ONLY, 0, fc.size() ), grid, listener );
+		}
+		finally {
+			fc.close();
+		}
+	}
+
+	public static void read( ByteBuffer b, NoteGrid grid ) throws IOException, InvalidMidiDataException {
+		read( b, grid, null );
+	}
+
+	// Reads from the bytes [0, limit) of the buffer, using absolute gets only.
+	public static void read( ByteBuffer b, NoteGrid grid, ProgressListener listener ) throws IOException, InvalidMidiDataException {
+		int [] chunks = findTrackChunks( b );
+		int numTracks = chunks.length / 2;
+		if ( numTracks == 1 ) {
+			new ScoreMidiReader( b, chunks[0], chunks[1] ).decodeTrack( grid );
+			if ( listener != null )
+				listener.trackDecoded( 1, 1 );
+		}
+		else if ( numTracks > 1 ) {
+			TrackDecoder decoder = new TrackDecoder( b, chunks, grid.getNumBeats(), grid.getNumPitches(), listener );
+			ForkJoinPool.commonPool().invoke( decoder );
+			if ( listener != null && listener.isCanceled() )
+				throw new InterruptedIOException( "reading canceled" );
+			for ( int i = 0; i < numTracks; ++i ) {
+				// as when decoding one track after the other, the first bad track is the one reported
+				Exception e = decoder.failures[ i ];
+				if ( e instanceof IOException )
+					throw (IOException)e;
+				if ( e instanceof InvalidMidiDataException )
+					throw (InvalidMidiDataException)e;
+			}
+			for ( int i = 0; i < numTracks; ++i )
+				grid.or( decoder.partialGrids[ i ] );
+		}
+	}
+
+	// Decodes the tracks [from, to), splitting the range in two until there is a single track.
+	// Each track is decoded into its own grid, so the tasks share nothing but the (read-only) bytes.
+	private static class TrackDecoder extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final ByteBuffer b;
+		final int [] chunks;
+		final int numBeats, numPitches;
+		final ProgressListener listener;
+		final NoteGrid [] partialGrids;
+		final Exception [] failures;
+		final AtomicInteger numTracksDecoded;
+		final int from, to;
+
+		TrackDecoder( ByteBuffer b, int [] chunks, int numBeats, int numPitches, ProgressListener listener ) {
+			this.b = b;
+			this.chunks = chunks;
+			this.numBeats = numBeats;
+			this.numPitches = numPitches;
+			this.listener = listener;
+			this.partialGrids = new NoteGrid[ chunks.length / 2 ];
+			this.failures = new Exception[ chunks.length / 2 ];
+			this.numTracksDecoded = new AtomicInteger();
+			this.from = 0;
+			this.to = chunks.length / 2;
+		}
+		private TrackDecoder( TrackDecoder parent, int from, int to ) {
+			this.b = parent.b;
+			this.chunks = parent.chunks;
+			this.numBeats = parent.numBeats;
+			this.numPitches = parent.numPitches;
+			this.listener = parent.listener;
+			this.partialGrids = parent.partialGrids;
+			this.failures = parent.failures;
+			this.numTracksDecoded = parent.numTracksDecoded;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if ( to - from > 1 ) {
+				int middle = ( from + to ) >>> 1;
+				invokeAll( new TrackDecoder( this, from, middle ), new TrackDecoder( this, middle, to ) );
+				return;
+			}
+			if ( listener != null && listener.isCanceled() )
+				return;
+			NoteGrid partialGrid = new SparseNoteGrid( numBeats, numPitches );
+			try {
+				new ScoreMidiReader( b, chunks[ 2*from ], chunks[ 2*from+1 ] ).decodeTrack( partialGrid );
+				partialGrids[ from ] = partialGrid;
+			}
+			catch ( IOException e ) {
+				failures[ from ] = e;
+			}
+			catch ( InvalidMidiDataException e ) {
+				failures[ from ] = e;
+			}
+			if ( listener != null )
+				listener.trackDecoded( numTracksDecoded.incrementAndGet(), partialGrids.length );
+		}
+	}
+
+	// Validates the file header and returns the [start, end) byte range of each track chunk,
+	// as pairs of ints.
+	private static int [] findTrackChunks( ByteBuffer b ) throws IOException, InvalidMidiDataException {
+		int fileLength = b.limit();
+		if ( fileLength < 14 )
+			throw new EOFException( "invalid MIDI file" );
+		if ( b.getInt( 0 ) != MTHD )
+			throw new InvalidMidiDataException( "not a valid MIDI file" );
+		int headerLength = b.getInt( 4 );
+		// the format and number of tracks are unsigned;
+		// the division is read as signed, its sign bit telling SMPTE timing from ticks per beat
+		int type = b.getShort( 8 ) & 0xFFFF;
+		int numTracks = b.getShort( 10 ) & 0xFFFF;
+		int timing = b.getShort( 12 );
+		if ( timing <= 0 ) {
+			int frameCode = -( timing >> 8 );
+			if ( frameCode != 24 && frameCode != 25 && frameCode != 29 && frameCode != 30 )
+				throw new InvalidMidiDataException( "Unknown frame code: " + frameCode );
+		}
+		if ( type != 0 && type != 1 )
+			throw new InvalidMidiDataException( "Invalid or unsupported file type: " + type );
+
+		// Skipping past the end of the file is not an error in itself (as with a FileInputStream),
+		// but reading the next chunk header from there is.
+		int [] chunks = new int[ 2 * numTracks ];
+		long pos = 14 + Math.max( headerLength - 6, 0 );
+		for ( int i = 0; i < numTracks; ++i ) {
+			// find the next track chunk, skipping chunks of any other kind
+			int magic;
+			long chunkLength = 0;
+			do {
+				if ( chunkLength < 0 )
+					return Arrays.copyOf( chunks, 2*i );
+				pos += chunkLength;
+				if ( pos + 8 > fileLength )
+					throw new EOFException( "invalid MIDI file" );
+				magic = b.getInt( (int)pos );
+				chunkLength = b.getInt( (int)pos + 4 );
+				pos += 8;
+			} while ( magic != MTRK );
+			if ( chunkLength < 0 || pos + chunkLength > fileLength )
+				return Arrays.copyOf( chunks, 2*i ); // a truncated track, and whatever follows it, is dropped
+			chunks[ 2*i ] = (int)pos;
+			chunks[ 2*i+1 ] = (int)( pos + chunkLength );
+			pos += chunkLength;
+		}
+		return chunks;
+	}
+
+	// Decodes the events of the track chunk [pos, end).
+	private void decodeTrack( NoteGrid grid ) throws IOException, InvalidMidiDataException {
+		int numBeats = grid.getNumBeats();
+		int numPitches = grid.getNumPitches();
+		long tick = 0;
+		int status = 0; // running status; 0 is invalid, so a track must start with a status byte
+		while ( pos < end ) {
+			tick += readVariableLengthQuantity();
+
+			int data1 = -1;
+			int byteValue = readByte();
+			if ( byteValue >= 0x80 )
+				status = byteValue;
+			else
+				data1 = byteValue;
+
+			switch ( status & 0xF0 ) {
+			case 0x90: {
+				if ( data1 == -1 )
+					data1 = readByte();
+				readByte(); // the velocity
+				long beat = tick / TICKS_PER_BEAT;
+				if ( 0 <= beat && beat < numBeats && data1 < numPitches )
+					grid.set( (int)beat, data1, true );
+				break;
+			}
+			case 0x80:
+			case 0xA0:
+			case 0xB0:
+			case 0xE0:
+				// two data bytes
+				if ( data1 == -1 )
+					readByte();
+				readByte();
+				break;
+			case 0xC0:
+			case 0xD0:
+				// one data byte
+				if ( data1 == -1 )
+					readByte();
+				break;
+			case 0xF0:
+				if ( status == 0xF0 || status == 0xF7 ) {
+					// sysex
+					skipData( (int)readVariableLengthQuantity() );
+				}
+				else if ( status == 0xFF ) {
+					// meta event
+					int metaType = readByte();
+					if ( metaType >= 0x80 )
+						throw new InvalidMidiDataException( "Invalid meta event with type " + metaType );
+					skipData( (int)readVariableLengthQuantity() );
+					if ( metaType == 0x2F )
+						return; // end of track
+				}
+				else {
+					throw new InvalidMidiDataException( "Invalid status byte: " + status );
+				}
+				break;
+			default:
+				throw new InvalidMidiDataException( "Invalid status byte: " + status );
+			}
+		}
+	}
+
+	private int readByte() throws EOFException {
+		if ( pos >= end )
+			throw new EOFException( "invalid MIDI file" );
+		return b.get( pos++ ) & 0xFF;
+	}
+
+	// 7 bits per byte, most significant first, with the top bit set on every byte but the last.
+	private long readVariableLengthQuantity() throws EOFException {
+		long value = 0;
+		int c;
+		do {
+			c = readByte();
+			value = ( value << 7 ) + ( c & 0x7F );
+		} while ( ( c & 0x80 ) != 0 );
+		return value;
+	}
+
+	private void skipData( int length ) throws InvalidMidiDataException {
+		if ( length < 0 || length > end - pos )
+			throw new InvalidMidiDataException( "Message length is out of bounds: " + length );
+		pos += length;
+	}
+
+}
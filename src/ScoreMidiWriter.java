@@ -0,0 +1,212 @@
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+// Writes the notes of a NoteGrid as a Standard MIDI File (format 1, one track),
+// streaming straight from the grid to a FileChannel through a fixed-size buffer,
+// without building a Sequence or any per-note objects.
+//
+// The output is byte for byte what MidiSystem.write() produces for the Track
+// that was built before, event for event:
+//    - at tick 0: the General MIDI sysex, the tempo, the track name,
+//      omni on, poly on, and the piano program change;
+//    - for each note: a note on at beat*TICKS_PER_BEAT, and a note off TICKS_PER_BEAT later,
+//      with the note offs at a tick coming before the note ons;
+//    - the end of track at the last event, or at MIN_END_OF_TRACK_TICK if that's later.
+// Like that writer, it uses running status for the channel messages
+// (but not across sysex and meta events).
+// The key of each note is its pitch index, as in the files written so far.
+//
+// An instance reuses its buffer from one file to the next, but is not thread safe.
+// Since a FileChannel is interruptible, interrupting the writing thread cancels the write
+// (with a ClosedByInterruptException) the next time the buffer is flushed.
+class ScoreMidiWriter {
+
+	// Is told, each time the buffer is flushed, how far into the grid the writer is.
+	// Called from the writing thread.
+	public interface ProgressListener {
+		public void beatsWritten( int numBeatsWritten, int numBeats );
+	}
+
+	public static final int TICKS_PER_QUARTER_NOTE = 24;
+	public static final int TICKS_PER_BEAT = 150;
+	public static final int MIN_END_OF_TRACK_TICK = 140;
+	public static final int NOTE_ON_VELOCITY = 0x60;
+	public static final int NOTE_OFF_VELOCITY = 0x40;
+	public static final String TRACK_NAME = "piste MIDI";
+
+	private static final int MTHD = 0x4d546864; // "MThd"
+	private static final int MTRK = 0x4d54726b; // "MTrk"
+	private static final int TRACK_LENGTH_POSITION = 18; // the track's length comes after the 14 byte file header and "MTrk"
+
+	// An event never takes more than this many bytes (the longest is the track name).
+	private static final int MAX_EVENT_LENGTH = 32;
+
+	private final ByteBuffer buffer;
+	private FileChannel channel;
+	private long trackLength; // in bytes, not counting the track header
+	private long currentTick;
+	private int runningStatus;
+	private ProgressListener listener;
+	private int numBeatsWritten;
+	private int numBeats;
+
+	public ScoreMidiWriter() {
+		this( 1 << 16 );
+	}
+	public ScoreMidiWriter( int bufferSize ) {
+		buffer = ByteBuffer.allocate( Math.max( bufferSize, MAX_EVENT_LENGTH ) );
+	}
+
+	public void write( NoteGrid grid, File file ) throws IOException {
+		write( grid, file, null );
+	}
+
+	public void write( NoteGrid grid, File file, ProgressListener listener ) throws IOException {
+		FileChannel fc = FileChannel.open(
+			file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+		);
+		try {
+			write( grid, fc, listener );
+		}
+		finally {
+			fc.close();
+		}
+	}
+
+	// Writes the file from the channel's current position,
+	// which must be 0 since the track length is patched in afterwards.
+	public void write( NoteGrid grid, FileChannel fc ) throws IOException {
+		write( grid, fc, null );
+	}
+
+	public void write( NoteGrid grid, FileChannel fc, ProgressListener listener ) throws IOException {
+		channel = fc;
+		this.listener = listener;
+		numBeatsWritten = 0;
+		numBeats = grid.getNumBeats();
+		buffer.clear();
+		try {
+			buffer.putInt( MTHD ).putInt( 6 );
+			buffer.putShort( (short)1 ); // format
+			buffer.putShort( (short)1 ); // number of tracks
+			buffer.putShort( (short)TICKS_PER_QUARTER_NOTE );
+			buffer.putInt( MTRK ).putInt( 0 ); // the length is filled in at the end
+			trackLength = 0;
+			currentTick = 0;
+			runningStatus = -1;
+
+			writeHeaderEvents();
+
+			// The note offs of a beat are written just before the note ons of the next non-empty beat,
+			// which is where they go when sorted by tick.
+			int previousBeat = -1;
+			for ( int x = grid.nextNonEmptyBeat( 0 ); x >= 0; x = grid.nextNonEmptyBeat( x+1 ) ) {
+				if ( previousBeat >= 0 )
+					writeNotes( grid, previousBeat, (long)( previousBeat + 1 ) * TICKS_PER_BEAT, 0x80, NOTE_OFF_VELOCITY );
+				writeNotes( grid, x, (long)x * TICKS_PER_BEAT, 0x90, NOTE_ON_VELOCITY );
+				previousBeat = x;
+				numBeatsWritten = x;
+			}
+			if ( previousBeat >= 0 )
+				writeNotes( grid, previousBeat, (long)( previousBeat + 1 ) * TICKS_PER_BEAT, 0x80, NOTE_OFF_VELOCITY );
+
+			// end of track
+			writeDeltaTime( Math.max( currentTick, MIN_END_OF_TRACK_TICK ) );
+			put( 0xFF ); put( 0x2F ); put( 0x00 );
+			runningStatus = 0xFF;
+
+			numBeatsWritten = numBeats;
+			flush();
+			ByteBuffer length = ByteBuffer.allocate( 4 );
+			length.putInt( 0, (int)trackLength );
+			while ( length.hasRemaining() )
+				channel.write( length, TRACK_LENGTH_POSITION + length.position() );
+		}
+		finally {
+			channel = null;
+			this.listener = null;
+		}
+	}
+
+	private void writeHeaderEvents() throws IOException {
+		// General MIDI sysex: turn on the General MIDI sound set
+		writeDeltaTime( 0 );
+		put( 0xF0 ); put( 5 ); put( 0x7E ); put( 0x7F ); put( 0x09 ); put( 0x01 ); put( 0xF7 );
+		runningStatus = 0xF0;
+
+		// tempo (meta event)
+		writeDeltaTime( 0 );
+		put( 0xFF ); put( 0x51 ); put( 3 ); put( 0x02 ); put( 0x00 ); put( 0x00 );
+
+		// track name (meta event)
+		writeDeltaTime( 0 );
+		put( 0xFF ); put( 0x03 ); put( TRACK_NAME.length() );
+		for ( int i = 0; i < TRACK_NAME.length(); ++i )
+			put( TRACK_NAME.charAt( i ) );
+		runningStatus = 0xFF;
+
+		// omni on, poly on
+		writeChannelMessage( 0, 0xB0, 0x7D, 0x00 );
+		writeChannelMessage( 0, 0xB0, 0x7F, 0x00 );
+
+		// program change to piano (a one data byte message)
+		writeDeltaTime( 0 );
+		writeStatus( 0xC0 );
+		put( 0x00 );
+	}
+
+	private void writeNotes( NoteGrid grid, int beat, long tick, int status, int velocity ) throws IOException {
+		for ( int y = grid.nextNoteInBeat( beat, 0 ); y >= 0; y = grid.nextNoteInBeat( beat, y+1 ) )
+			writeChannelMessage( tick, status, y, velocity );
+	}
+
+	private void writeChannelMessage( long tick, int status, int data1, int data2 ) throws IOException {
+		writeDeltaTime( tick );
+		writeStatus( status );
+		put( data1 );
+		put( data2 );
+	}
+
+	private void writeStatus( int status ) {
+		if ( status != runningStatus ) {
+			runningStatus = status;
+			put( status );
+		}
+	}
+
+	// Starts a new event, at the given tick, by writing the time since the previous event
+	// as a variable-length quantity: 7 bits per byte, most significant first,
+	// with the top bit set on every byte but the last.
+	private void writeDeltaTime( long tick ) throws IOException {
+		if ( buffer.remaining() < MAX_EVENT_LENGTH )
+			flush();
+		long delta = tick - currentTick;
+		currentTick = tick;
+		int shift = 0;
+		while ( shift < 63 && ( delta >>> ( shift + 7 ) ) != 0 )
+			shift += 7;
+		for ( ; shift > 0; shift -= 7 )
+			put( (int)( delta >>> shift ) & 0x7F | 0x80 );
+		put( (int)delta & 0x7F );
+	}
+
+	private void put( int b ) {
+		buffer.put( (byte)b );
+		++ trackLength;
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while ( buffer.hasRemaining() )
+			channel.write( buffer );
+		buffer.clear();
+		if ( listener != null )
+			listener.beatsWritten( numBeatsWritten, numBeats );
+	}
+
+}
+
@@ -0,0 +1,161 @@
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sound.midi.InvalidMidiDataException;
+
+// Draws scores to images without any window, e.g., to make thumbnails of many scores.
+//
+// A renderer draws a grid the way the canvas draws the score's background and notes
+// (through the same GraphicsWrapper and Score drawing code), framed to fit the image,
+// into a BufferedImage that it reuses from one grid to the next, and writes it with its own PngWriter.
+// It isn't thread safe: forThread() gives each thread its own renderer, image and buffers included.
+//
+//     java ScoreRenderer <output directory> <.mid or .spr file, or directory of them>...
+//
+// (or SimplePianoRoll --render followed by the same arguments) renders each score to
+// <output directory>/<name>.png, on one thread per core, in headless mode,
+// and prints the throughput in scores per second.
+// As when loading them in the application, MIDI files are read into a grid of Score's default length.
+class ScoreRenderer {
+
+	public static final int DEFAULT_WIDTH = 512;
+	public static final int DEFAULT_HEIGHT = 352; // 4 pixels per cell for a 128 beat score
+
+	private static final ThreadLocal< ScoreRenderer > renderers = new ThreadLocal< ScoreRenderer >() {
+		protected ScoreRenderer initialValue() {
+			return new ScoreRenderer( DEFAULT_WIDTH, DEFAULT_HEIGHT );
+		}
+	};
+
+	// Returns the calling thread's renderer, of the default size.
+	public static ScoreRenderer forThread() {
+		return renderers.get();
+	}
+
+	private final BufferedImage image;
+	private final GraphicsWrapper gw = new GraphicsWrapper();
+	private final PngWriter pngWriter = new PngWriter();
+	private final Score score = new Score();
+	private final int defaultNumBeats = score.numBeats;
+
+	public ScoreRenderer( int width, int height ) {
+		image = new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB );
+		gw.resize( width, height );
+	}
+
+	// Draws the grid, and returns the image, which is only valid until the next call.
+	public BufferedImage render( NoteGrid grid ) {
+		score.setGrid( grid );
+		gw.frame( score.getBoundingRectangle(), false );
+		Graphics2D g2 = image.createGraphics();
+		try {
+			gw.set( g2 );
+			gw.clear( 0.4f, 0.4f, 0.4f );
+			gw.setCoordinateSystemToWorldSpaceUnits();
+			score.drawBackground( gw, true );
+			score.drawNotes( gw );
+		}
+		finally {
+			g2.dispose();
+		}
+		return image;
+	}
+
+	public void renderToPng( NoteGrid grid, File file ) throws IOException {
+		pngWriter.write( render( grid ), file );
+	}
+
+	// Reads a .mid or .spr file, in the calling thread.
+	public NoteGrid readScore( File file ) throws IOException, InvalidMidiDataException {
+		if ( file.getName().endsWith( ScoreSprFile.EXTENSION ) ) {
+			NoteGrid grid = ScoreSprFile.open( file );
+			if ( grid.getNumPitches() != score.numPitches )
+				throw new IOException( file + " has " + grid.getNumPitches() + " pitches instead of " + score.numPitches );
+			return grid;
+		}
+		NoteGrid grid = new DenseNoteGrid( defaultNumBeats, score.numPitches );
+		ScoreMidiReader.read( file, grid );
+		return grid;
+	}
+
+	private static boolean isScoreFile( File file ) {
+		String name = file.getName().toLowerCase();
+		return file.isFile() && ( name.endsWith( ".mid" ) || name.endsWith( ScoreSprFile.EXTENSION ) );
+	}
+
+	private static File getPngFile( File outputDirectory, File scoreFile ) {
+		String name = scoreFile.getName();
+		return new File( outputDirectory, name.substring( 0, name.lastIndexOf( '.' ) ) + ".png" );
+	}
+
+	public static void main( String[] args ) {
+		// before anything touches AWT
+		System.setProperty( "java.awt.headless", "true" );
+		if ( args.length < 2 ) {
+			System.out.println( "usage: ScoreRenderer <output directory> <.mid or .spr file, or directory of them>..." );
+			System.exit( 1 );
+		}
+		final File outputDirectory = new File( args[ 0 ] );
+		outputDirectory.mkdirs();
+		ArrayList< File > scoreFiles = new ArrayList< File >();
+		for ( int i = 1; i < args.length; ++i ) {
+			File f = new File( args[ i ] );
+			File [] children = f.isDirectory() ? f.listFiles() : new File[] { f };
+			if ( children == null )
+				continue;
+			Arrays.sort( children );
+			for ( File child : children )
+				if ( isScoreFile( child ) )
+					scoreFiles.add( child );
+		}
+
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool( numThreads );
+		long startTime = System.nanoTime();
+		ArrayList< Future< ? > > results = new ArrayList< Future< ? > >();
+		for ( final File scoreFile : scoreFiles ) {
+			results.add( executor.submit( new Runnable() {
+				public void run() {
+					try {
+						ScoreRenderer renderer = forThread();
+						renderer.renderToPng( renderer.readScore( scoreFile ), getPngFile( outputDirectory, scoreFile ) );
+					}
+					catch ( Exception e ) {
+						// one bad score doesn't stop the others
+						throw new RuntimeException( scoreFile + ": " + e.toString(), e );
+					}
+				}
+			} ) );
+		}
+		int numFailures = 0;
+		for ( Future< ? > result : results ) {
+			try {
+				result.get();
+			}
+			catch ( Exception e ) {
+				System.out.println( "Exception caught " + e.getCause().getMessage() );
+				++ numFailures;
+			}
+		}
+		executor.shutdown();
+		double seconds = ( System.nanoTime() - startTime ) / 1e9;
+		int numRendered = scoreFiles.size() - numFailures;
+		System.out.println(
+			"Rendered " + numRendered + " scores (" + numFailures + " failed) to " + outputDirectory
+			+ " in " + String.format( "%.3f", seconds ) + " s with " + numThreads + " threads: "
+			+ String.format( "%.1f", numRendered / seconds ) + " scores/s"
+		);
+		if ( numFailures > 0 )
+			System.exit( 1 );
+	}
+
+}
+
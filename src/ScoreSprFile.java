@@ -0,0 +1,312 @@
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+// The native .spr file format, which stores a score's grid exactly as it is
+// (one bit per note, with none of the quantization of a MIDI file)
+// and can be opened in constant time, with random access to any beat.
+//
+// The file is made of 4 KB slots (the size of a page).
+// Slot 0 holds the header (all values big endian):
+//     0  int   magic number, "SPR1"
+//     4  int   version
+//     8  int   number of beats
+//    12  int   number of pitches
+//    16  int   beats per chunk (BEATS_PER_CHUNK)
+//    20  int   number of notes that are on
+//    24  long  byte offset of the chunk index
+//    32  long  generation: a number identifying an autosave snapshot (see ScoreJournal), 0 in other files
+// The beats are grouped in chunks of BEATS_PER_CHUNK beat columns,
+// each stored in a slot of its own as WORDS_PER_BEAT longs per column (as in a DenseNoteGrid).
+// The chunk index has one long per chunk: the byte offset of the chunk's slot,
+// or 0 if every column of the chunk is empty (in which case it isn't stored).
+// The index takes up one or more consecutive slots.
+//
+// Saving a MappedNoteGrid back to its own file only writes the chunks that changed.
+// They are written to slots that the file's current index doesn't use, followed by a new index,
+// and only then is the header rewritten to point to that index; so if a save is interrupted,
+// the file still holds the score as it was last saved.
+// The slots that are no longer used are reused by the next save, so the file doesn't keep growing.
+// The file is never truncated by such a save, though: the grid being saved still has it mapped,
+// and a mapped file can't be truncated on every platform (e.g., Windows).
+// Its space is reclaimed when the grid is written in full, by write().
+class ScoreSprFile {
+
+	public static final String EXTENSION = ".spr";
+
+	public static final int MAGIC = 0x53505231; // "SPR1"
+	public static final int VERSION = 1;
+
+	public static final int LOG2_BEATS_PER_CHUNK = 8;
+	public static final int BEATS_PER_CHUNK = 1 << LOG2_BEATS_PER_CHUNK;
+	public static final int SLOT_LENGTH = BEATS_PER_CHUNK * NoteGrid.WORDS_PER_BEAT * 8; // 4096 bytes
+	private static final int HEADER_LENGTH = 32; // the generation is read and written on its own
+	private static final int GENERATION_OFFSET = 32;
+
+	// The chunks of a MappedNoteGrid that changed since it was last saved,
+	// copied so they can be written from another thread.
+	// A null chunk is one whose columns are all empty.
+	static class Changes {
+		final int numBeats, numPitches, numNotes;
+		final int [] chunkIndices;
+		final long [][] chunks;
+		Changes( int numBeats, int numPitches, int numNotes, int [] chunkIndices, long [][] chunks ) {
+			this.numBeats = numBeats;
+			this.numPitches = numPitches;
+			this.numNotes = numNotes;
+			this.chunkIndices = chunkIndices;
+			this.chunks = chunks;
+		}
+	}
+
+	public static int getNumChunks( int numBeats ) {
+		return (int)( ( (long)numBeats + BEATS_PER_CHUNK - 1 ) >>> LOG2_BEATS_PER_CHUNK );
+	}
+
+	private static int getNumIndexSlots( int numChunks ) {
+		return (int)( ( 8L * numChunks + SLOT_LENGTH - 1 ) / SLOT_LENGTH );
+	}
+
+	// Maps the file and reads its header and chunk index; the columns are only read when visited.
+	public static MappedNoteGrid open( File file ) throws IOException {
+		FileChannel fc = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+		ByteBuffer b;
+		try {
+			long fileLength = fc.size();
+			if ( fileLength > Integer.MAX_VALUE )
+				throw new IOException( "file too large: " + file );
+			// the mapping stays valid after the channel is closed
+			b = fc.map( FileChannel.MapMode.READ_ONLY, 0, fileLength );
+		}
+		finally {
+			fc.close();
+		}
+		return openBytes( file, b );
+	}
+
+	// Reads the whole file into a grid on the heap, without mapping it,
+	// for when the file must be replaceable while the grid is in use
+	// (a mapped file can't be replaced or deleted on every platform, e.g. Windows).
+	public static NoteGrid read( File file ) throws IOException {
+		return openBytes( file, ByteBuffer.wrap( Files.readAllBytes( file.toPath() ) ) ).copy( false );
+	}
+
+	private static MappedNoteGrid openBytes( File file, ByteBuffer b ) throws IOException {
+		if ( b.limit() < HEADER_LENGTH || b.getInt( 0 ) != MAGIC )
+			throw new IOException( "not a .spr file: " + file );
+		if ( b.getInt( 4 ) != VERSION )
+			throw new IOException( "unsupported .spr version " + b.getInt( 4 ) + ": " + file );
+		int numBeats = b.getInt( 8 );
+		int numPitches = b.getInt( 12 );
+		int numNotes = b.getInt( 20 );
+		long indexOffset = b.getLong( 24 );
+		int numChunks = getNumChunks( numBeats );
+		if (
+			numBeats < 0 || numPitches <= 0 || numPitches > NoteGrid.MAX_NUM_PITCHES
+			|| b.getInt( 16 ) != BEATS_PER_CHUNK || numNotes < 0
+			|| ( numChunks > 0 && ( indexOffset < SLOT_LENGTH || indexOffset + 8L * numChunks > b.limit() ) )
+		)
+			throw new IOException( "corrupt .spr header: " + file );
+		long [] chunkOffsets = new long[ numChunks ];
+		for ( int chunk = 0; chunk < numChunks; ++chunk ) {
+			long offset = b.getLong( (int)indexOffset + 8 * chunk );
+			if ( offset != 0 && ( offset < SLOT_LENGTH || offset + SLOT_LENGTH > b.limit() ) )
+				throw new IOException( "corrupt .spr chunk index: " + file );
+			chunkOffsets[ chunk ] = offset;
+		}
+		return new MappedNoteGrid( file, b, numBeats, numPitches, numNotes, chunkOffsets );
+	}
+
+	// Returns the generation in the file's header, or 0 if it doesn't have one.
+	public static long readGeneration( File file ) throws IOException {
+		FileChannel fc = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+		try {
+			ByteBuffer b = ByteBuffer.allocate( 8 );
+			while ( b.hasRemaining() ) {
+				if ( fc.read( b, GENERATION_OFFSET + b.position() ) < 0 )
+					return 0;
+			}
+			return b.getLong( 0 );
+		}
+		finally {
+			fc.close();
+		}
+	}
+
+	public static void write( NoteGrid grid, File file ) throws IOException {
+		write( grid, file, 0 );
+	}
+
+	// Writes the whole grid to a new file, and forces it to disk
+	// (as it is then usually moved over the file it replaces).
+	// Only the chunks that have at least one note are visited and stored.
+	public static void write( NoteGrid grid, File file, long generation ) throws IOException {
+		FileChannel fc = FileChannel.open(
+			file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+		);
+		try {
+			int numBeats = grid.getNumBeats();
+			long [] index = new long[ getNumChunks( numBeats ) ];
+			ByteBuffer slot = ByteBuffer.allocate( SLOT_LENGTH );
+			long offset = SLOT_LENGTH;
+			for ( int x = grid.nextNonEmptyBeat( 0 ); x >= 0; ) {
+				int chunk = x >>> LOG2_BEATS_PER_CHUNK;
+				int chunkStart = chunk << LOG2_BEATS_PER_CHUNK;
+				slot.clear();
+				for ( int beat = chunkStart; beat < chunkStart + BEATS_PER_CHUNK; ++beat ) {
+					boolean isInGrid = beat < numBeats;
+					slot.putLong( isInGrid ? grid.getWord( beat, 0 ) : 0 );
+					slot.putLong( isInGrid ? grid.getWord( beat, 1 ) : 0 );
+				}
+				writeFully( fc, slot, offset );
+				index[ chunk ] = offset;
+				offset += SLOT_LENGTH;
+				x = chunkStart + BEATS_PER_CHUNK < numBeats ? grid.nextNonEmptyBeat( chunkStart + BEATS_PER_CHUNK ) : -1;
+			}
+			writeIndex( fc, index, offset );
+			ByteBuffer b = ByteBuffer.allocate( 8 );
+			b.putLong( 0, generation );
+			writeFully( fc, b, GENERATION_OFFSET );
+			writeHeader( fc, numBeats, grid.getNumPitches(), grid.countNotes(), offset );
+			fc.force( false );
+		}
+		finally {
+			fc.close();
+		}
+	}
+
+	// Writes the changed chunks of a MappedNoteGrid back to the file it was opened from.
+	// The save is done once the new header is written: only an exception thrown before that
+	// is passed on, as what comes after (forcing the header to disk, closing the file) is best-effort,
+	// and must not make a save that happened look like it failed.
+	public static void update( File file, Changes changes ) throws IOException {
+		FileChannel fc = FileChannel.open( file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE );
+		boolean isHeaderWritten = false;
+		try {
+			ByteBuffer header = ByteBuffer.allocate( HEADER_LENGTH );
+			readFully( fc, header, 0 );
+			if ( header.getInt( 0 ) != MAGIC || header.getInt( 4 ) != VERSION )
+				throw new IOException( "not a .spr file: " + file );
+			int oldNumChunks = getNumChunks( header.getInt( 8 ) );
+			long oldIndexOffset = header.getLong( 24 );
+			long [] oldIndex = new long[ oldNumChunks ];
+			if ( oldNumChunks > 0 ) {
+				ByteBuffer b = ByteBuffer.allocate( 8 * oldNumChunks );
+				readFully( fc, b, oldIndexOffset );
+				b.asLongBuffer().get( oldIndex );
+			}
+
+			// The slots used by the saved score, which must not be touched until the header is rewritten.
+			BitSet usedSlots = new BitSet();
+			usedSlots.set( 0 );
+			for ( long offset : oldIndex )
+				if ( offset != 0 )
+					usedSlots.set( (int)( offset / SLOT_LENGTH ) );
+			if ( oldNumChunks > 0 )
+				usedSlots.set( (int)( oldIndexOffset / SLOT_LENGTH ), (int)( oldIndexOffset / SLOT_LENGTH ) + getNumIndexSlots( oldNumChunks ) );
+
+			// The new index starts out as the old one, without the chunks that changed.
+			int numChunks = getNumChunks( changes.numBeats );
+			long [] index = Arrays.copyOf( oldIndex, numChunks );
+			for ( int j = 0; j < changes.chunkIndices.length; ++j )
+				index[ changes.chunkIndices[ j ] ] = 0;
+
+			ByteBuffer slot = ByteBuffer.allocate( SLOT_LENGTH );
+			BitSet allocatedSlots = (BitSet)usedSlots.clone();
+			for ( int j = 0; j < changes.chunkIndices.length; ++j ) {
+				long [] words = changes.chunks[ j ];
+				if ( words == null || isZero( words ) )
+					continue;
+				int s = allocatedSlots.nextClearBit( 1 );
+				allocatedSlots.set( s );
+				slot.clear();
+				slot.asLongBuffer().put( words );
+				writeFully( fc, slot, (long)s * SLOT_LENGTH );
+				index[ changes.chunkIndices[ j ] ] = (long)s * SLOT_LENGTH;
+			}
+
+			// the index goes in the first run of free slots that is long enough
+			long indexOffset = 0;
+			if ( numChunks > 0 ) {
+				int numIndexSlots = getNumIndexSlots( numChunks );
+				int s = allocatedSlots.nextClearBit( 1 );
+				while ( true ) {
+					int nextUsed = allocatedSlots.nextSetBit( s );
+					if ( nextUsed < 0 || nextUsed - s >= numIndexSlots )
+						break;
+					s = allocatedSlots.nextClearBit( nextUsed );
+				}
+				indexOffset = (long)s * SLOT_LENGTH;
+				writeIndex( fc, index, indexOffset );
+			}
+
+			// the new contents must be on disk before the header points to them
+			fc.force( false );
+			writeHeader( fc, changes.numBeats, changes.numPitches, changes.numNotes, indexOffset );
+			isHeaderWritten = true;
+			fc.force( false );
+		}
+		catch ( IOException e ) {
+			if ( ! isHeaderWritten )
+				throw e;
+			System.out.println( "Exception caught " + e.toString() );
+		}
+		finally {
+			closeQuietly( fc );
+		}
+	}
+
+	// For closing a file after an exception, or once the only thing left to do is to close it.
+	private static void closeQuietly( FileChannel fc ) {
+		try {
+			fc.close();
+		}
+		catch ( IOException e ) {
+			System.out.println( "Exception caught " + e.toString() );
+		}
+	}
+
+	private static boolean isZero( long [] words ) {
+		for ( long w : words )
+			if ( w != 0 )
+				return false;
+		return true;
+	}
+
+	private static void writeIndex( FileChannel fc, long [] index, long offset ) throws IOException {
+		ByteBuffer b = ByteBuffer.allocate( 8 * index.length );
+		b.asLongBuffer().put( index );
+		writeFully( fc, b, offset );
+	}
+
+	private static void writeHeader( FileChannel fc, int numBeats, int numPitches, int numNotes, long indexOffset ) throws IOException {
+		ByteBuffer b = ByteBuffer.allocate( HEADER_LENGTH );
+		b.putInt( MAGIC ).putInt( VERSION );
+		b.putInt( numBeats ).putInt( numPitches ).putInt( BEATS_PER_CHUNK ).putInt( numNotes );
+		b.putLong( indexOffset );
+		b.flip();
+		writeFully( fc, b, 0 );
+	}
+
+	private static void writeFully( FileChannel fc, ByteBuffer b, long position ) throws IOException {
+		b.rewind();
+		while ( b.hasRemaining() )
+			fc.write( b, position + b.position() );
+	}
+
+	private static void readFully( FileChannel fc, ByteBuffer b, long position ) throws IOException {
+		while ( b.hasRemaining() ) {
+			if ( fc.read( b, position + b.position() ) < 0 )
+				throw new IOException( "truncated .spr file" );
+		}
+		b.flip();
+	}
+
+}
+
@@ -0,0 +1,258 @@
+
+import java.util.BitSet;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+// Plays a Score by converting it to a Sequence once,
+// and then leaving the timing to a javax.sound.midi.Sequencer,
+// whose own thread sends the note events to the synthesizer.
+//
+// Beat x of the score covers the ticks [x*TICKS_PER_BEAT, (x+1)*TICKS_PER_BEAT),
+// with its note ons on the first tick and its note offs on the last,
+// so that the events of a beat can be found, removed, and added again
+// without touching those of the neighbouring beats.
+// The sequence loops over [0, numBeats*TICKS_PER_BEAT) until stopped.
+//
+// When the score is edited, only the beats that changed are re-synced with the track.
+// While playing, the sequencer walks the track by index, and only looks up its index again
+// when it is repositioned (e.g., when it loops back to the start).
+// So a beat is re-synced right away only if it is safely ahead of the play position;
+// edits to the beats that were already played are kept pending until the last half beat
+// of the loop, where they are all re-synced at once and the sequencer is repositioned.
+//
+// Except for getCurrentBeat() and setTempo(), the methods must be called
+// from the thread that edits the score (i.e., the event dispatch thread),
+// since they read the score's grid.
+class SequencerPlayback implements ScoreListener {
+
+	public static final int TICKS_PER_BEAT = 96;
+
+	private Score score;
+	private double millisecondsPerBeat; // at normal tempo
+	private Sequencer sequencer;
+	private Sequence sequence;
+	private Track track;
+
+	// Beats whose events in the track don't match the score yet.
+	private BitSet dirtyBeats = new BitSet();
+
+	// How far ahead of the play position a beat must start to be re-synced while playing,
+	// leaving time for the sequencer's thread to move on before the track changes.
+	public static final int MIN_TICKS_AHEAD_TO_SYNC = TICKS_PER_BEAT / 2;
+
+	public SequencerPlayback( Score score, Receiver receiver, double millisecondsPerBeat )
+		throws MidiUnavailableException, InvalidMidiDataException
+	{
+		this.score = score;
+		this.millisecondsPerBeat = millisecondsPerBeat;
+		sequencer = MidiSystem.getSequencer( false );
+		sequencer.open();
+		sequencer.getTransmitter().setReceiver( receiver );
+		buildSequence();
+		score.addListener( this );
+	}
+
+	public void close() {
+		score.removeListener( this );
+		sequencer.close();
+	}
+
+	private void buildSequence() throws InvalidMidiDataException {
+		sequence = new Sequence( Sequence.PPQ, TICKS_PER_BEAT );
+		track = sequence.createTrack();
+
+		// one beat is one quarter note
+		int microsecondsPerBeat = (int)Math.round( millisecondsPerBeat * 1000 );
+		byte [] data = { (byte)( microsecondsPerBeat >> 16 ), (byte)( microsecondsPerBeat >> 8 ), (byte)microsecondsPerBeat };
+		MetaMessage tempoMessage = new MetaMessage();
+		tempoMessage.setMessage( 0x51, data, data.length );
+		track.add( new MidiEvent( tempoMessage, 0 ) );
+
+		for ( int x = score.grid.nextNonEmptyBeat( 0 ); x >= 0; x = score.grid.nextNonEmptyBeat( x+1 ) )
+			addEventsOfBeat( x );
+		dirtyBeats.clear();
+
+		sequencer.setSequence( sequence );
+		setLoopEnd( score.numBeats );
+		sequencer.setLoopCount( Sequencer.LOOP_CONTINUOUSLY );
+	}
+
+	private void setLoopEnd( int numBeats ) throws InvalidMidiDataException {
+		long endTick = (long)numBeats * TICKS_PER_BEAT;
+		// the track's end of track event is pushed out to endTick if it is before,
+		// since the loop end point cannot be past the end of the sequence
+		MetaMessage endOfTrack = new MetaMessage();
+		endOfTrack.setMessage( 0x2F, new byte[0], 0 );
+		track.add( new MidiEvent( endOfTrack, endTick ) );
+		sequencer.setLoopStartPoint( 0 );
+		sequencer.setLoopEndPoint( endTick );
+	}
+
+	private void addEventsOfBeat( int beat ) throws InvalidMidiDataException {
+		long tick = (long)beat * TICKS_PER_BEAT;
+		for ( int y = score.grid.nextNoteInBeat( beat, 0 ); y >= 0; y = score.grid.nextNoteInBeat( beat, y+1 ) ) {
+			int midiNoteNumber = y + score.midiNoteNumberOfLowestPitch;
+			track.add( new MidiEvent( new ShortMessage( ShortMessage.NOTE_ON, 0, midiNoteNumber, Constant.midiVolume ), tick ) );
+			track.add( new MidiEvent( new ShortMessage( ShortMessage.NOTE_OFF, 0, midiNoteNumber, 0 ), tick + TICKS_PER_BEAT - 1 ) );
+		}
+	}
+
+	// Returns the index of the first event of the track at or after the given tick.
+	private int findFirstEvent( long tick ) {
+		int low = 0, high = track.size();
+		while ( low < high ) {
+			int mid = ( low + high ) >>> 1;
+			if ( track.get( mid ).getTick() < tick )
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	// Replaces the note events of the given beat with those currently in the score.
+	private void syncBeat( int beat ) throws InvalidMidiDataException {
+		long fromTick = (long)beat * TICKS_PER_BEAT;
+		long toTick = fromTick + TICKS_PER_BEAT;
+		int i = findFirstEvent( fromTick );
+		while ( i < track.size() ) {
+			MidiEvent e = track.get( i );
+			if ( e.getTick() >= toTick )
+				break;
+			if ( e.getMessage() instanceof ShortMessage )
+				track.remove( e );
+			else
+				++ i; // the tempo and end of track events stay
+		}
+		if ( beat < score.numBeats )
+			addEventsOfBeat( beat );
+	}
+
+	// Re-syncs the dirty beats that can safely be changed.
+	// When stopped, that is all of them; while playing, it is those
+	// that start far enough after the play position.
+	private void syncDirtyBeats( boolean isRunning ) {
+		long tick = sequencer.getTickPosition();
+		try {
+			for ( int x = dirtyBeats.nextSetBit( 0 ); x >= 0; x = dirtyBeats.nextSetBit( x+1 ) ) {
+				if ( isRunning && (long)x * TICKS_PER_BEAT <= tick + MIN_TICKS_AHEAD_TO_SYNC )
+					continue;
+				syncBeat( x );
+				dirtyBeats.clear( x );
+			}
+		}
+		catch ( InvalidMidiDataException e ) {
+			e.printStackTrace();
+		}
+	}
+
+	public void noteChanged( int beat, int pitchIndex, boolean isOn ) {
+		dirtyBeats.set( beat );
+		// While stopped, the beats are only re-synced when playback starts,
+		// so that a long series of edits (e.g., loading a file) doesn't touch the track each time.
+		if ( sequencer.isRunning() )
+			syncDirtyBeats( true );
+	}
+
+	public void numBeatsChanged( int oldNumBeats, int newNumBeats ) {
+		try {
+			setLoopEnd( newNumBeats );
+		}
+		catch ( InvalidMidiDataException e ) {
+			e.printStackTrace();
+		}
+		if ( sequencer.getTickPosition() >= (long)newNumBeats * TICKS_PER_BEAT ) {
+			// The play position was cut off: go back to the start.
+			// This also makes the sequencer look up its position in the track again,
+			// so every pending beat can now be re-synced.
+			sequencer.setTickPosition( 0 );
+			syncDirtyBeats( false );
+		}
+		else {
+			syncDirtyBeats( sequencer.isRunning() );
+		}
+	}
+
+	public void gridReplaced( int oldNumBeats, int newNumBeats ) {
+		// Re-syncing every beat one at a time would cost more than building the sequence again.
+		boolean wasRunning = sequencer.isRunning();
+		long tick = sequencer.getTickPosition();
+		if ( wasRunning )
+			sequencer.stop();
+		try {
+			buildSequence();
+		}
+		catch ( InvalidMidiDataException e ) {
+			e.printStackTrace();
+		}
+		if ( wasRunning ) {
+			sequencer.setTickPosition( tick < (long)newNumBeats * TICKS_PER_BEAT ? tick : 0 );
+			sequencer.start();
+		}
+	}
+
+	// Starts playing from the first beat.
+	public void start( double tempo ) {
+		if ( dirtyBeats.cardinality() > score.numBeats / 8 ) {
+			// cheaper to start over than to re-sync that many beats one at a time
+			try {
+				buildSequence();
+			}
+			catch ( InvalidMidiDataException e ) {
+				e.printStackTrace();
+			}
+		}
+		else {
+			syncDirtyBeats( false );
+		}
+		setTempo( tempo );
+		sequencer.setTickPosition( 0 );
+		sequencer.start();
+	}
+
+	public void stop() {
+		sequencer.stop();
+	}
+
+	// Should be called regularly (at least a few times per beat) during playback,
+	// to re-sync the pending beats once the play position allows it.
+	public void update() {
+		if ( dirtyBeats.isEmpty() || ! sequencer.isRunning() )
+			return;
+		syncDirtyBeats( true );
+		if ( dirtyBeats.isEmpty() )
+			return;
+		long endTick = (long)score.numBeats * TICKS_PER_BEAT;
+		if ( sequencer.getTickPosition() >= endTick - MIN_TICKS_AHEAD_TO_SYNC ) {
+			// The remaining beats are behind the play position.
+			// The sequence is about to loop back, which stops the sounding notes anyway,
+			// so re-sync them all and reposition the sequencer now, which has it look up
+			// its index in the track again (and stops the notes slightly earlier).
+			syncDirtyBeats( false );
+			sequencer.setTickPosition( sequencer.getTickPosition() );
+		}
+	}
+
+	// The tempo is the duration of a beat relative to the normal one,
+	// as in MyCanvas (i.e., larger is slower).
+	// This takes effect right away, without changing the sequence.
+	public void setTempo( double tempo ) {
+		sequencer.setTempoFactor( (float)( 1 / tempo ) );
+	}
+
+	// Returns the beat currently being played.
+	public int getCurrentBeat() {
+		return (int)( sequencer.getTickPosition() / TICKS_PER_BEAT );
+	}
+
+}
+
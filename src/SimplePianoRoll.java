@@ -1,32 +1,27 @@
 // import java.awt.Graphics2D;
-import java.awt.Color;
 import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
-import java.awt.Graphics;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
-import java.awt.event.KeyListener;
-import java.awt.event.MouseEvent;
-import java.awt.event.MouseListener;
-import java.awt.event.MouseMotionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadLocalRandom;
 
-import javax.sound.midi.MetaMessage;
 import javax.sound.midi.MidiChannel;
-import javax.sound.midi.MidiEvent;
-import javax.sound.midi.MidiMessage;
 import javax.sound.midi.MidiSystem;
-import javax.sound.midi.Sequence;
-import javax.sound.midi.Sequencer;
-import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Synthesizer;
-import javax.sound.midi.SysexMessage;
-import javax.sound.midi.Track;
-import javax.sound.midi.spi.MidiFileWriter;
-import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.ButtonGroup;
@@ -41,673 +36,14 @@ import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
+import javax.swing.KeyStroke;
+import javax.swing.ProgressMonitor;
 import javax.swing.SwingUtilities;
-import java.util.Random;
-
-
-
-/*
-   The octave:
-      pitch class     English name     French name
-           0             C             do
-           1             C#/Db         do diese / re bemol
-           2             D             re
-           3             D#/Eb         re diese / mi bemol
-           4             E             mi
-           5             F             fa
-           6             F#/Gb         fa diese / sol bemol
-           7             G             sol
-           8             G#/Ab         sol diese / la bemol
-           9             A             la
-          10             A#/Bb         la diese / si bemol
-          11             B             si
-           0             C             do
-
-   A grand piano keyboard has 88 keys:
-                              Note Name     MIDI note number     Pitch class
-      lowest key (1st key):       A0            21                     9
-      middle C:                   C4            60                     0
-      highest key (88th key):     C8           108                     0
- */
-
-
-class Score {
-	public static final int midiNoteNumberOfMiddleC = 60;
-
-	public int numPitches = 88;
-	public static final int pitchClassOfLowestPitch = 9; // 9==A==la
-	public final int midiNoteNumberOfLowestPitch = 21;
-	public int numBeats = 128;
-	public boolean [][] grid;
-
-	public static final int numPitchesInOctave = 12;
-	public String [] namesOfPitchClasses;
-	public boolean [] pitchClassesInMajorScale;
-	public boolean [] pitchClassesToEmphasizeInMajorScale;
-
-	public Score() {
-		grid = new boolean[ numBeats ][ numPitches ];
-
-		namesOfPitchClasses = new String[ numPitchesInOctave ];
-		namesOfPitchClasses[ 0] = "C";
-		namesOfPitchClasses[ 1] = "C#";
-		namesOfPitchClasses[ 2] = "D";
-		namesOfPitchClasses[ 3] = "D#";
-		namesOfPitchClasses[ 4] = "E";
-		namesOfPitchClasses[ 5] = "F";
-		namesOfPitchClasses[ 6] = "F#";
-		namesOfPitchClasses[ 7] = "G";
-		namesOfPitchClasses[ 8] = "G#";
-		namesOfPitchClasses[ 9] = "A";
-		namesOfPitchClasses[10] = "A#";
-		namesOfPitchClasses[11] = "B";
-
-		pitchClassesInMajorScale = new boolean[ numPitchesInOctave ];
-		pitchClassesInMajorScale[ 0] = true;
-		pitchClassesInMajorScale[ 1] = false;
-		pitchClassesInMajorScale[ 2] = true;
-		pitchClassesInMajorScale[ 3] = false;
-		pitchClassesInMajorScale[ 4] = true;
-		pitchClassesInMajorScale[ 5] = true;
-		pitchClassesInMajorScale[ 6] = false;
-		pitchClassesInMajorScale[ 7] = true;
-		pitchClassesInMajorScale[ 8] = false;
-		pitchClassesInMajorScale[ 9] = true;
-		pitchClassesInMajorScale[10] = false;
-		pitchClassesInMajorScale[11] = true;
-
-		pitchClassesToEmphasizeInMajorScale = new boolean[ numPitchesInOctave ];
-		pitchClassesToEmphasizeInMajorScale[ 0] = true;
-		pitchClassesToEmphasizeInMajorScale[ 1] = false;
-		pitchClassesToEmphasizeInMajorScale[ 2] = false;
-		pitchClassesToEmphasizeInMajorScale[ 3] = false;
-		pitchClassesToEmphasizeInMajorScale[ 4] = true;
-		pitchClassesToEmphasizeInMajorScale[ 5] = true;
-		pitchClassesToEmphasizeInMajorScale[ 6] = false;
-		pitchClassesToEmphasizeInMajorScale[ 7] = true;
-		pitchClassesToEmphasizeInMajorScale[ 8] = false;
-		pitchClassesToEmphasizeInMajorScale[ 9] = false;
-		pitchClassesToEmphasizeInMajorScale[10] = false;
-		pitchClassesToEmphasizeInMajorScale[11] = false;
-	}
-
-	// returns -1 if out of bounds
-	public int getMidiNoteNumberForMouseY( GraphicsWrapper gw, int mouse_y ) {
-		float y = gw.convertPixelsToWorldSpaceUnitsY( mouse_y );
-		int indexOfPitch = (int)(-y);
-		if ( 0 <= indexOfPitch && indexOfPitch < numPitches )
-			return indexOfPitch + midiNoteNumberOfLowestPitch;
-		return -1;
-	}
-	/************************AJOUT************************/
-	public void setNumBeats(int taille)
-	{
-		this.numBeats = taille;
-	}
-
-	// returns -1 if out of bounds
-	public int getBeatForMouseX( GraphicsWrapper gw, int mouse_x ) {
-		float x = gw.convertPixelsToWorldSpaceUnitsX( mouse_x );
-		int indexOfBeat = (int)x;
-		if ( 0 <= indexOfBeat && indexOfBeat < numBeats )
-			return indexOfBeat;
-		return -1;
-	}
-
-	public void draw(
-			GraphicsWrapper gw,
-			boolean highlightMajorCScale,
-			int midiNoteNumber1ToHilite,
-			int beat1ToHilite,
-			int beat2ToHilite
-			) {
-		for ( int y = 0; y < numPitches; y++ ) {
-			int pitchClass = ( y + pitchClassOfLowestPitch ) % numPitchesInOctave;
-			int midiNoteNumber = y + midiNoteNumberOfLowestPitch;
-			if ( midiNoteNumber == midiNoteNumber1ToHilite ) { // mouse cursor
-				gw.setColor( 0, 1, 1 );
-				gw.fillRect( 0, -y-0.8f, numBeats, 0.6f );
-			}
-
-			if ( midiNoteNumber == midiNoteNumberOfMiddleC ) {
-				gw.setColor( 1, 1, 1 );
-				gw.fillRect( 0, -y-0.7f, numBeats, 0.4f );
-			}
-			else if ( pitchClass == 0 && highlightMajorCScale ) {
-				gw.setColor( 1, 1, 1 );
-				gw.fillRect( 0, -y-0.6f, numBeats, 0.2f );
-			}
-			else if ( pitchClassesToEmphasizeInMajorScale[ pitchClass ] && highlightMajorCScale ) {
-				gw.setColor( 0.6f, 0.6f, 0.6f );
-				gw.fillRect( 0, -y-0.6f, numBeats, 0.2f );
-			}
-			else if ( pitchClassesInMajorScale[ pitchClass ] || ! highlightMajorCScale ) {
-				gw.setColor( 0.6f, 0.6f, 0.6f );
-				gw.fillRect( 0, -y-0.55f, numBeats, 0.1f );
-			}
-		}
-		for ( int x = 0; x < numBeats; x++ ) {
-			if ( x == beat1ToHilite ) { // mouse cursor
-				gw.setColor( 0, 1, 1 );
-				gw.fillRect( x+0.2f, -numPitches, 0.6f, numPitches );
-			}
-
-			if ( x == beat2ToHilite ) { // time cursor
-				gw.setColor( 1, 0, 0 );
-				gw.fillRect( x+0.45f, -numPitches, 0.1f, numPitches );
-			}
-			else if ( x % 4 == 0 ) {
-				gw.setColor( 0.6f, 0.6f, 0.6f );
-				gw.fillRect( x+0.45f, -numPitches, 0.1f, numPitches );
-			}
-		}
-		gw.setColor( 0, 0, 0 );
-		for ( int y = 0; y < numPitches; ++y ) {
-			for ( int x = 0; x < numBeats; ++x ) {
-				if ( grid[x][y] )
-					gw.fillRect( x+0.3f, -y-0.7f, 0.4f, 0.4f );
-			}
-		}
-	}
-
-	public AlignedRectangle2D getBoundingRectangle() {
-		return new AlignedRectangle2D(
-				new Point2D(0,-numPitches),
-				new Point2D(numBeats,0)
-				);
-	}
-
-}
-
-class MyCanvas extends JPanel implements KeyListener, MouseListener, MouseMotionListener, Runnable {
-
-	SimplePianoRoll simplePianoRoll;
-	GraphicsWrapper gw = new GraphicsWrapper();
-
-	Score score = new Score();
-
-	Thread thread = null;
-	boolean threadSuspended;
-
-	/************************AJOUT************************/
-	double tempo = 1;
-	boolean isTempoDirty = true;
-	int mouseX_init;
-	int deltaX_bis;
-	int currentBeat = 0;
-
-	Sequencer seq;
-	MidiFileWriter writer;
-	public static final int RADIAL_MENU_PLAY = 0;
-	public static final int RADIAL_MENU_STOP = 1;
-	public static final int RADIAL_MENU_DRAW = 2;
-	public static final int RADIAL_MENU_ERASE = 3;
-
-	public static final int CONTROL_MENU_ZOOM = 0;
-	public static final int CONTROL_MENU_PAN = 1;
-	public static final int CONTROL_MENU_TEMPO = 2;
-	public static final int CONTROL_MENU_TOTAL_DURATION = 3;
-	public static final int CONTROL_MENU_TRANSPOSE = 4;
-	public static final int CONTROL_MENU_DURATION = 5;
-
-	RadialMenuWidget radialMenu = new RadialMenuWidget();
-	ControlMenuWidget controlMenu = new ControlMenuWidget();	
-	int mouse_x, mouse_y, old_mouse_x, old_mouse_y;
-
-	boolean isControlKeyDown = false;
-
-	int beatOfMouseCursor = -1; // -1 for none
-	int midiNoteNumberOfMouseCurser = -1; // -1 for none
-
-	public MyCanvas( SimplePianoRoll sp ) {
-		simplePianoRoll = sp;
-		setBorder( BorderFactory.createLineBorder( Color.black ) );
-		setBackground( Color.white );
-		addKeyListener( this );
-		addMouseListener( this );
-		addMouseMotionListener( this );	
-		/************************AJOUT************************/
-		radialMenu.setItemLabelAndID( RadialMenuWidget.CENTRAL_ITEM, "",            RADIAL_MENU_STOP );
-		radialMenu.setItemLabelAndID( 1,                             "STOP ◼",  RADIAL_MENU_STOP );
-		radialMenu.setItemLabelAndID( 3,                             "Draw ♪",  RADIAL_MENU_DRAW );
-		radialMenu.setItemLabelAndID( 5,                             "PLAY ►",  RADIAL_MENU_PLAY );
-		radialMenu.setItemLabelAndID( 7,                             "Erase ○", RADIAL_MENU_ERASE );
-
-		controlMenu.setItemLabelAndID( ControlMenuWidget.CENTRAL_ITEM, "", -1 );
-		controlMenu.setItemLabelAndID( 1, "Tempo ↑", CONTROL_MENU_TEMPO );
-		controlMenu.setItemLabelAndID( 2, "Pan", CONTROL_MENU_PAN );
-		controlMenu.setItemLabelAndID( 3, "Zoom →", CONTROL_MENU_ZOOM );
-		controlMenu.setItemLabelAndID( 5, "Total Duration ↓", CONTROL_MENU_TOTAL_DURATION );
-		controlMenu.setItemLabelAndID( 7, "← Transpose ", CONTROL_MENU_TRANSPOSE );
-		controlMenu.setItemLabelAndID( 8, "Duration ♫ ", CONTROL_MENU_DURATION );
-
-		gw.frame( score.getBoundingRectangle(), false );
-	}
-	public Dimension getPreferredSize() {
-		return new Dimension( Constant.INITIAL_WINDOW_WIDTH, Constant.INITIAL_WINDOW_HEIGHT );
-	}
-	public void clear() {
-		for ( int y = 0; y < score.numPitches; ++y )
-			for ( int x = 0; x < score.numBeats; ++x )
-				score.grid[x][y] = false;
-		repaint();
-	}
-	public void frameAll() {
-		gw.frame( score.getBoundingRectangle(), false );
-		repaint();
-	}
-	public void paintComponent( Graphics g ) {
-		super.paintComponent( g );
-		gw.set( g );
-		if ( getWidth() != gw.getWidth() || getHeight() != gw.getHeight() )
-			gw.resize( getWidth(), getHeight() );
-		gw.clear(0.4f,0.4f,0.4f);
-		gw.setupForDrawing();
-		gw.setCoordinateSystemToWorldSpaceUnits();
-		gw.enableAlphaBlending();
-
-		score.draw(
-				gw,
-				simplePianoRoll.highlightMajorScale,
-				midiNoteNumberOfMouseCurser,
-				beatOfMouseCursor,
-				currentBeat
-				);
-
-		gw.setCoordinateSystemToPixels();
-
-		if ( radialMenu.isVisible() )
-			radialMenu.draw( gw );
-		if ( controlMenu.isVisible() )
-			controlMenu.draw( gw );
-
-		if ( ! radialMenu.isVisible() && ! controlMenu.isVisible() ) {
-			// draw datatip  
-			if ( midiNoteNumberOfMouseCurser >= 0 && beatOfMouseCursor >= 0 ) {
-				final int margin = 5;
-				final int x_offset = 15;
-
-				String s = score.namesOfPitchClasses[
-				                                     ( midiNoteNumberOfMouseCurser - score.midiNoteNumberOfLowestPitch + score.pitchClassOfLowestPitch )
-				                                     % score.numPitchesInOctave
-				                                     ];
-				int x0 = mouse_x + x_offset;
-				int y0 = mouse_y - RadialMenuWidget.textHeight - 2*margin;
-				int height = RadialMenuWidget.textHeight + 2*margin;
-				int width = Math.round( gw.stringWidth( s ) + 2*margin );
-				gw.setColor( 0, 0, 0, 0.6f );
-				gw.fillRect( x0, y0, width, height );
-				gw.setColor( 1, 1, 1 );
-				gw.drawRect( x0, y0, width, height );
-				gw.drawString( mouse_x + x_offset + margin, mouse_y - margin, s );
-			}
-		}
-	}
-
-	public void keyPressed( KeyEvent e ) {
-		if ( e.getKeyCode() == KeyEvent.VK_CONTROL ) {
-			isControlKeyDown = true;
-			if (
-					beatOfMouseCursor>=0
-					&& simplePianoRoll.rolloverMode == SimplePianoRoll.RM_PLAY_NOTE_UPON_ROLLOVER_IF_SPECIAL_KEY_HELD_DOWN
-					)
-				playNote( midiNoteNumberOfMouseCurser );
-		}
-	}
-	public void keyReleased( KeyEvent e ) {
-		if ( e.getKeyCode() == KeyEvent.VK_CONTROL ) {
-			isControlKeyDown = false;
-			stopPlayingNote( midiNoteNumberOfMouseCurser );
-		}
-	}
-	public void keyTyped( KeyEvent e ) {
-	}
-
-
-	public void mouseClicked( MouseEvent e ) { }
-	public void mouseEntered( MouseEvent e ) { }
-	public void mouseExited( MouseEvent e ) { }
-
-	public void paint( int mouse_x, int mouse_y ) {
-		int newBeatOfMouseCursor = score.getBeatForMouseX( gw, mouse_x );
-		int newMidiNoteNumberOfMouseCurser = score.getMidiNoteNumberForMouseY( gw, mouse_y );
-		if ( newBeatOfMouseCursor != beatOfMouseCursor || newMidiNoteNumberOfMouseCurser != midiNoteNumberOfMouseCurser) {
-			beatOfMouseCursor = newBeatOfMouseCursor;
-			midiNoteNumberOfMouseCurser = newMidiNoteNumberOfMouseCurser;
-			repaint();
-		}
-
-		if ( beatOfMouseCursor >= 0 && midiNoteNumberOfMouseCurser >= 0 ) {
-			if ( simplePianoRoll.dragMode == SimplePianoRoll.DM_DRAW_NOTES ) {
-				if ( score.grid[beatOfMouseCursor][midiNoteNumberOfMouseCurser-score.midiNoteNumberOfLowestPitch] != true ) {
-					score.grid[beatOfMouseCursor][midiNoteNumberOfMouseCurser-score.midiNoteNumberOfLowestPitch] = true;
-					repaint();
-				}
-			}
-			else if ( simplePianoRoll.dragMode == SimplePianoRoll.DM_ERASE_NOTES ) {
-				if ( score.grid[beatOfMouseCursor][midiNoteNumberOfMouseCurser-score.midiNoteNumberOfLowestPitch] != false ) {
-					score.grid[beatOfMouseCursor][midiNoteNumberOfMouseCurser-score.midiNoteNumberOfLowestPitch] = false;
-					repaint();
-				}
-			}
-
-		}
-
-	}
-
-	public void mousePressed( MouseEvent e ) {
-		old_mouse_x = mouse_x;
-		old_mouse_y = mouse_y;
-		mouse_x = e.getX();
-		mouse_y = e.getY();
-
-		isControlKeyDown = e.isControlDown();
-
-		if ( radialMenu.isVisible() || (SwingUtilities.isLeftMouseButton(e) && e.isControlDown()) ) {
-			int returnValue = radialMenu.pressEvent( mouse_x, mouse_y );
-			if ( returnValue == CustomWidget.S_REDRAW )
-				repaint();
-			if ( returnValue != CustomWidget.S_EVENT_NOT_CONSUMED )
-				return;
-		}
-		if ( controlMenu.isVisible() || (SwingUtilities.isLeftMouseButton(e) && e.isShiftDown()) ) {
-			int returnValue = controlMenu.pressEvent( mouse_x, mouse_y );
-			if ( returnValue == CustomWidget.S_REDRAW )
-				repaint();
-			if ( returnValue != CustomWidget.S_EVENT_NOT_CONSUMED )
-				return;
-		}
-		if ( SwingUtilities.isLeftMouseButton(e) ) {
-			paint( mouse_x, mouse_y );
-			System.out.println(mouse_x + " " + mouse_y);
-		}
-	}
-
-	public void mouseReleased( MouseEvent e ) {
-		old_mouse_x = mouse_x;
-		old_mouse_y = mouse_y;
-		mouse_x = e.getX();
-		mouse_y = e.getY();
-
-		isControlKeyDown = e.isControlDown();
-
-		if ( radialMenu.isVisible() ) {
-			int returnValue = radialMenu.releaseEvent( mouse_x, mouse_y );
-
-			int itemID = radialMenu.getIDOfSelection();
-			if ( 0 <= itemID ) {
-				switch ( itemID ) {
-				case RADIAL_MENU_PLAY:
-					simplePianoRoll.setMusicPlaying( true );
-
-					break;
-				case RADIAL_MENU_STOP:
-					simplePianoRoll.setMusicPlaying( false );	
-
-					break;
-				case RADIAL_MENU_DRAW:
-					simplePianoRoll.setDragMode( SimplePianoRoll.DM_DRAW_NOTES );
-					break;
-				case RADIAL_MENU_ERASE:
-					simplePianoRoll.setDragMode( SimplePianoRoll.DM_ERASE_NOTES );
-					break;
-				}
-			}
-
-			if ( returnValue == CustomWidget.S_REDRAW )
-				repaint();
-			if ( returnValue != CustomWidget.S_EVENT_NOT_CONSUMED )
-				return;
-		}
-		if ( controlMenu.isVisible() ) {
-			int returnValue = controlMenu.releaseEvent( mouse_x, mouse_y );
-
-			if ( returnValue == CustomWidget.S_REDRAW )
-				repaint();
-			if ( returnValue != CustomWidget.S_EVENT_NOT_CONSUMED )
-				return;
-		}
-
-		else {
-
-			switch ( controlMenu.getIDOfSelection() ) {
-
-			/************************AJOUT************************/
-			case CONTROL_MENU_TEMPO:
-				isTempoDirty = true;				
-				break;
-			default:
-				// TODO XXX
-				break;
-			}
-		}
-
-	}
-
-	private void playNote( int midiNoteNumber ) {
-		if ( Constant.USE_SOUND && midiNoteNumber >= 0 ) {
-			simplePianoRoll.midiChannels[0].noteOn(midiNoteNumber,Constant.midiVolume);
-		}
-	}
-	private void stopPlayingNote( int midiNoteNumber ) {
-		if ( Constant.USE_SOUND && midiNoteNumber >= 0 ) {
-			simplePianoRoll.midiChannels[0].noteOff(midiNoteNumber);
-		}
-	}
-
-	public void mouseMoved( MouseEvent e ) {
-		old_mouse_x = mouse_x;
-		old_mouse_y = mouse_y;
-		mouse_x = e.getX();
-		mouse_y = e.getY();
-
-		requestFocusInWindow();
-
-		isControlKeyDown = e.isControlDown();
-
-		if ( radialMenu.isVisible() ) {
-			int returnValue = radialMenu.moveEvent( mouse_x, mouse_y );
-			if ( returnValue == CustomWidget.S_REDRAW )
-				repaint();
-			if ( returnValue != CustomWidget.S_EVENT_NOT_CONSUMED )
-				return;
-		}
-		if ( controlMenu.isVisible() ) {
-			int returnValue = controlMenu.moveEvent( mouse_x, mouse_y );
-			if ( returnValue == CustomWidget.S_REDRAW )
-				repaint();
-			if ( returnValue != CustomWidget.S_EVENT_NOT_CONSUMED )
-				return;
-		}
-		else {
-			int newBeatOfMouseCursor = score.getBeatForMouseX( gw, mouse_x );
-			int newMidiNoteNumberOfMouseCurser = score.getMidiNoteNumberForMouseY( gw, mouse_y );
-			if ( newBeatOfMouseCursor != beatOfMouseCursor ) {
-				beatOfMouseCursor = newBeatOfMouseCursor;
-				repaint();
-			}
-			if ( newMidiNoteNumberOfMouseCurser != midiNoteNumberOfMouseCurser ) {
-				stopPlayingNote( midiNoteNumberOfMouseCurser );
-				midiNoteNumberOfMouseCurser = newMidiNoteNumberOfMouseCurser;
-				if (
-						beatOfMouseCursor>=0
-						&& (
-								simplePianoRoll.rolloverMode == SimplePianoRoll.RM_PLAY_NOTE_UPON_ROLLOVER
-								|| (
-										simplePianoRoll.rolloverMode == SimplePianoRoll.RM_PLAY_NOTE_UPON_ROLLOVER_IF_SPECIAL_KEY_HELD_DOWN
-										&& isControlKeyDown
-										)
-								)
-						)
-					playNote( midiNoteNumberOfMouseCurser );
-				repaint();
-			}
-		}
-
-	}
-
-	public void mouseDragged( MouseEvent e ) {
-		old_mouse_x = mouse_x;
-		old_mouse_y = mouse_y;
-		mouse_x = e.getX();
-		mouse_y = e.getY();
-		int delta_x = mouse_x - old_mouse_x;
-		int delta_y = mouse_y - old_mouse_y;
-
-		isControlKeyDown = e.isControlDown();
-
-		if ( radialMenu.isVisible() ) {
-			int returnValue = radialMenu.dragEvent( mouse_x, mouse_y );
-			if ( returnValue == CustomWidget.S_REDRAW )
-				repaint();
-			if ( returnValue != CustomWidget.S_EVENT_NOT_CONSUMED )
-				return;
-		}
-		if ( controlMenu.isVisible() ) {
-			if ( controlMenu.isInMenuingMode() ) {
-				int returnValue = controlMenu.dragEvent( mouse_x, mouse_y );
-				if ( returnValue == CustomWidget.S_REDRAW )
-					repaint();
-				if ( returnValue != CustomWidget.S_EVENT_NOT_CONSUMED )
-					return;
-			}
-			else {
-				// use the drag event to change the appropriate parameter
-				switch ( controlMenu.getIDOfSelection() ) {
-				case CONTROL_MENU_PAN:
-					gw.pan( delta_x, delta_y );
-					break;
-				case CONTROL_MENU_ZOOM:
-					gw.zoomIn( (float)Math.pow( Constant.zoomFactorPerPixelDragged, delta_x-delta_y ) );
-					break;
-
-					/************************AJOUT************************/
-
-				case CONTROL_MENU_TEMPO:
-					if(isTempoDirty)
-					{
-						mouseX_init = old_mouse_x;
-						isTempoDirty = false;						
-
-					}
-					else{
-						deltaX_bis = mouseX_init - mouse_x;
-						if(deltaX_bis < 0)
-						{
-							tempo = 1 - (Math.abs(deltaX_bis)/(double)gw.getWidth());
-							if(tempo < 0)
-								tempo = 0.005;
-						}
-
-						else if (deltaX_bis >  0)
-						{
-							tempo = 1 + (deltaX_bis/(double)gw.getWidth());
-						}
-					}
-					simplePianoRoll.tempoLabel.setText(Double.toString(Math.round(tempo*200)) + " ms");
-
-					break;
-
-
-
-					/************************AJOUT************************/
-				case CONTROL_MENU_TOTAL_DURATION:
-					/* Premier test de modification de la durée de la portée
-						score.numBeats += delta_x;						
-						repaint();
-					 */					
-					simplePianoRoll.canvas.score.numBeats += delta_x;
-					// Création d'une nouvelle grille de notes
-					if(simplePianoRoll.canvas.score.numBeats > 0 && (simplePianoRoll.canvas.score.numBeats + delta_x) > 0)
-					{
-						simplePianoRoll.canvas.score.grid = new boolean[simplePianoRoll.canvas.score.numBeats][simplePianoRoll.canvas.score.numPitches];
-					}
-					break;	
+import javax.swing.SwingWorker;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 
 
-				default:
-					//TO DO
-					break;
-				}
-				repaint();
-			}
-		}
-		else {
-			paint( mouse_x, mouse_y );
-			System.out.println(mouse_y);
-		}
-	}
-
-	public void startBackgroundWork() {
-		currentBeat = 0;
-		if ( thread == null ) {
-			thread = new Thread( this );
-			threadSuspended = false;
-			thread.start();
-		}
-		else {
-			if ( threadSuspended ) {
-				threadSuspended = false;
-				synchronized( this ) {
-					notify();
-				}
-			}
-		}
-	}
-	public void stopBackgroundWork() {
-		threadSuspended = true;
-	}
-	public void run() {
-		try {
-			/************************AJOUT************************/
-			int sleepIntervalInMilliseconds = 200; //150
-
-
-			while (true) {
-
-				// Here's where the thread does some work
-				synchronized( this ) {
-					sleepIntervalInMilliseconds = (int) Math.round(200*tempo);
-					if ( Constant.USE_SOUND ) {
-						for ( int i = 0; i < score.numPitches; ++i ) {
-							if ( score.grid[currentBeat][i] )
-							{
-								simplePianoRoll.midiChannels[0].noteOff( i+score.midiNoteNumberOfLowestPitch );
-								//simplePianoRoll.midiChannels[0].noteOn( i+score.midiNoteNumberOfLowestPitch, Constant.midiVolume );
-								//System.out.println("note off");
-							}
-						}
-					}
-					currentBeat += 1;
-					if ( currentBeat >= score.numBeats )
-						currentBeat = 0;
-					if ( Constant.USE_SOUND ) {
-						for ( int i = 0; i < score.numPitches; ++i ) {
-							if ( score.grid[currentBeat][i] )
-								simplePianoRoll.midiChannels[0].noteOn( i+score.midiNoteNumberOfLowestPitch, Constant.midiVolume );
-							//System.out.println(" On" + i+score.midiNoteNumberOfLowestPitch);
-							//track.add(createNoteOnEvent(i+score.midiNoteNumberOfLowestPitch,0));						
-
-						}
-					}
-				}
-				repaint();
-
-				// Now the thread checks to see if it should suspend itself
-				if ( threadSuspended ) {
-					synchronized( this ) {
-						while ( threadSuspended ) {
-							wait();
-						}
-					}
-				}
-				thread.sleep( sleepIntervalInMilliseconds );  // interval given in milliseconds
-			}
-		}
-		catch (InterruptedException e) { }
-	}
-
-}
 
 public class SimplePianoRoll implements ActionListener {
 
@@ -719,14 +55,49 @@ public class SimplePianoRoll implements ActionListener {
 
 	Synthesizer synthesizer;
 	MidiChannel [] midiChannels;
+	ScoreMidiWriter midiWriter = new ScoreMidiWriter(); // only used on the I/O thread
+	SongGenerator songGenerator = new SongGenerator( System.nanoTime() );
+
+	// Saves and loads run on this thread, one at a time, so the event dispatch thread
+	// (and with it, editing and playback) never waits on the disk.
+	final ExecutorService ioExecutor = Executors.newSingleThreadExecutor( new ThreadFactory() {
+		public Thread newThread( Runnable r ) {
+			Thread t = new Thread( r, "I/O" );
+			t.setDaemon( true );
+			return t;
+		}
+	} );
+
+	// Where the score is autosaved, so it can be recovered if the application dies.
+	static final File autosaveDirectory = new File( System.getProperty( "user.home" ), ".simplepianoroll" );
+	ScoreJournal journal;
+
+	// The file last saved to or loaded from, and whether the score was edited since.
+	File documentFile = null;
+	boolean isDirty = false;
+	int numEdits = 0; // lets a save tell whether the score was edited while it was being written
+	final ScoreListener dirtyTracker = new ScoreListener() {
+		public void noteChanged( int beat, int pitchIndex, boolean isOn ) {
+			scoreEdited();
+		}
+		public void numBeatsChanged( int oldNumBeats, int newNumBeats ) {
+			scoreEdited();
+		}
+		public void gridReplaced( int oldNumBeats, int newNumBeats ) {
+			scoreEdited();
+		}
+	};
 	/************************AJOUT************************/
 	JMenuItem generateRandomSongItem;
 	JMenuItem generateRandomSongItem2;
 	JMenuItem clearMenuItem;
 	JMenuItem saveMenuItem;
+	JMenuItem saveSprMenuItem;
 	JMenuItem loadMenuItem;
 	JMenuItem rdmMenuItem;
 	JMenuItem quitMenuItem;
+	JMenuItem undoMenuItem;
+	JMenuItem redoMenuItem;
 	JCheckBoxMenuItem showToolsMenuItem;
 	JCheckBoxMenuItem highlightMajorScaleMenuItem;
 	JMenuItem frameAllMenuItem;
@@ -735,6 +106,7 @@ public class SimplePianoRoll implements ActionListener {
 
 	JCheckBox playCheckBox;
 	JCheckBox loopWhenPlayingCheckBox;
+	JCheckBox useSequencerCheckBox;
 
 	JRadioButton drawNotesRadioButton;
 	JRadioButton eraseNotesRadioButton;
@@ -748,6 +120,9 @@ public class SimplePianoRoll implements ActionListener {
 
 	public boolean isMusicPlaying = false;
 	public boolean isMusicLoopedWhenPlayed = false;
+	// If true, playback converts the score to a Sequence and leaves the timing to a Sequencer.
+	// Takes effect the next time playback starts.
+	public boolean isSequencerUsedForPlayback = false;
 	public boolean highlightMajorScale = true;
 	public boolean isAutoFrameActive = true;
 
@@ -790,9 +165,169 @@ public class SimplePianoRoll implements ActionListener {
 		else assert false;
 	}
 
+	private void scoreEdited() {
+		++ numEdits;
+		setDirty( true );
+	}
+
+	public void setDirty( boolean flag ) {
+		if ( flag != isDirty ) {
+			isDirty = flag;
+			updateTitle();
+		}
+	}
+
+	private void updateTitle() {
+		String title = applicationName;
+		if ( documentFile != null )
+			title += " - " + documentFile.getName();
+		if ( isDirty )
+			title += " *";
+		frame.setTitle( title );
+	}
+
+	// Runs a save or a load on the I/O thread, updating its progress monitor,
+	// and canceling it (which interrupts the thread) if the user asks to.
+	private void runOnIoThread( final SwingWorker< ?, ? > worker, final ProgressMonitor progressMonitor ) {
+		worker.addPropertyChangeListener( new PropertyChangeListener() {
+			public void propertyChange( PropertyChangeEvent evt ) {
+				if ( "progress".equals( evt.getPropertyName() ) )
+					progressMonitor.setProgress( worker.getProgress() );
+				if ( progressMonitor.isCanceled() )
+					worker.cancel( true );
+			}
+		} );
+		ioExecutor.execute( worker );
+	}
+
+	// Writes a snapshot of the score on the I/O thread, so the score can keep being edited
+	// (and played) meanwhile; edits made after the snapshot are not saved, and keep the score dirty.
+	// The file is written as MIDI, or in the native format if its name ends with ScoreSprFile.EXTENSION.
+	// The file is first written next to its destination and then moved over it,
+	// so a canceled or failed save never leaves a truncated file behind.
+	// The exception is a .spr file saved over the one the grid was opened from:
+	// only the chunks changed since then are written, and the file is updated in place.
+	public void saveInBackground( final File file ) {
+		final NoteGrid grid = canvas.score.grid;
+		final boolean isNative = file.getName().endsWith( ScoreSprFile.EXTENSION );
+		final MappedNoteGrid mappedGrid = isNative && grid.isMapped() && ((MappedNoteGrid)grid).getFile().equals( file )
+			? (MappedNoteGrid)grid : null;
+		final ScoreSprFile.Changes changes = mappedGrid == null ? null : mappedGrid.takeChanges();
+		final NoteGrid snapshot = mappedGrid == null ? grid.copy( false ) : null;
+		final int numEditsAtSnapshot = numEdits;
+		final ProgressMonitor progressMonitor = new ProgressMonitor( frame, "Saving " + file.getName(), null, 0, 100 );
+		SwingWorker< Void, Void > worker = new SwingWorker< Void, Void >() {
+			protected Void doInBackground() throws Exception {
+				if ( changes != null ) {
+					ScoreSprFile.update( file, changes );
+					return null;
+				}
+				File temporaryFile = new File( file.getPath() + ".tmp" );
+				try {
+					if ( isNative ) {
+						ScoreSprFile.write( snapshot, temporaryFile );
+					}
+					else {
+						midiWriter.write( snapshot, temporaryFile, new ScoreMidiWriter.ProgressListener() {
+							public void beatsWritten( int numBeatsWritten, int numBeats ) {
+								setProgress( numBeats == 0 ? 100 : (int)( 100L * numBeatsWritten / numBeats ) );
+							}
+						} );
+					}
+					Files.move( temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+				}
+				finally {
+					temporaryFile.delete(); // does nothing once the file has been moved
+				}
+				return null;
+			}
+			protected void done() {
+				progressMonitor.close();
+				boolean isSaved = false;
+				if ( isCancelled() || progressMonitor.isCanceled() ) {
+					System.out.println( "Sauvegarde annulée" );
+				}
+				else {
+					try {
+						get();
+						isSaved = true;
+						documentFile = file;
+						if ( numEdits == numEditsAtSnapshot )
+							isDirty = false;
+						updateTitle();
+						System.out.println( "Fin Sauvegarde" );
+					}
+					catch ( Exception e ) {
+						System.out.println( "Exception caught " + e.toString() );
+					}
+				}
+				// The chunks that weren't saved must be written by the next save;
+				// counting this as an edit keeps a save that was started before it from marking the score clean.
+				if ( ! isSaved && changes != null ) {
+					mappedGrid.restoreChanges( changes );
+					scoreEdited();
+				}
+			}
+		};
+		System.out.println( "Début Sauvegarde" );
+		runOnIoThread( worker, progressMonitor );
+	}
+
+	// Reads a MIDI file on the I/O thread (its tracks being decoded in parallel),
+	// showing the progress, and then swaps the resulting grid into the score in one step,
+	// so the score is never seen half loaded.
+	// A .spr file is opened as a MappedNoteGrid instead, which only reads its header and index.
+	// If the file can't be read, the score is cleared, as it always was;
+	// if the load is canceled, the score is left as it is.
+	public void loadInBackground( final File file ) {
+		final int numBeats = canvas.score.numBeats;
+		final int numPitches = canvas.score.numPitches;
+		final ProgressMonitor progressMonitor = new ProgressMonitor( frame, "Loading " + file.getName(), null, 0, 100 );
+		SwingWorker< NoteGrid, Void > worker = new SwingWorker< NoteGrid, Void >() {
+			protected NoteGrid doInBackground() throws Exception {
+				if ( file.getName().endsWith( ScoreSprFile.EXTENSION ) ) {
+					NoteGrid grid = ScoreSprFile.open( file );
+					if ( grid.getNumPitches() != numPitches )
+						throw new IOException( file + " has " + grid.getNumPitches() + " pitches instead of " + numPitches );
+					return grid;
+				}
+				NoteGrid grid = new DenseNoteGrid( numBeats, numPitches );
+				ScoreMidiReader.read( file, grid, new ScoreMidiReader.ProgressListener() {
+					public void trackDecoded( int numTracksDecoded, int numTracks ) {
+						setProgress( 100 * numTracksDecoded / numTracks );
+					}
+					public boolean isCanceled() {
+						return isCancelled();
+					}
+				} );
+				return grid;
+			}
+			protected void done() {
+				progressMonitor.close();
+				if ( isCancelled() || progressMonitor.isCanceled() )
+					return;
+				try {
+					canvas.score.setGrid( get() );
+					canvas.repaint();
+					documentFile = file;
+					isDirty = false;
+					updateTitle();
+				}
+				catch ( Exception e ) {
+					System.out.println( "Exception caught " + e.toString() );
+					canvas.clear();
+				}
+			}
+		};
+		runOnIoThread( worker, progressMonitor );
+	}
+
 	public void actionPerformed(ActionEvent e) {
 		Object source = e.getSource();
 
+		// a command that changes the score (e.g., generating a song) is undone as a whole
+		canvas.history.beginEdit();
+
 		//Choisir aléatoirement entre plusieurs gamme
 		//Ecrire aléatoirement des notes sur la gamme choisie
 		if ( source == generateRandomSongItem ) {
@@ -815,18 +350,10 @@ public class SimplePianoRoll implements ActionListener {
 			}*/
 		
 			
-			int gammeChoisie = nbrRDM(1,7); //7
-			//On parcourt la grille de notes
-			for ( int y = gammeChoisie*12 -12; y < gammeChoisie*12; ++y ) {
-				for ( int x = 0; x < canvas.score.numBeats; ++x ) {
-					int nbrALEA = nbrRDM(1,10000);
-					if(nbrALEA < 400)
-					{
-						canvas.score.grid[x][y] = true;
-					}
-					
-				}
-			}
+			// une gamme choisie au hasard, dont chaque note est jouée avec une probabilité de 399/10000
+			canvas.score.addNotes( songGenerator.generate(
+				canvas.score.numBeats, canvas.score.numPitches, 1, SongGenerator.DEFAULT_DENSITY
+			) );
 			
 			canvas.repaint();
 			
@@ -882,31 +409,10 @@ public class SimplePianoRoll implements ActionListener {
 					canvas.clear();
 				
 					
-					int gammeChoisie = nbrRDM(1,7); //7
-					//On parcourt la grille de notes
-					for ( int y = gammeChoisie*12 -12; y < gammeChoisie*12; ++y ) {
-						for ( int x = 0; x < canvas.score.numBeats; ++x ) {
-							int nbrALEA = nbrRDM(1,10000);
-							if(nbrALEA < 400)
-							{
-								canvas.score.grid[x][y] = true;
-							}
-							
-						}
-					}
-					
-					gammeChoisie = nbrRDM(1,7); //7
-					//On parcourt la grille de notes
-					for ( int y = gammeChoisie*12 -12; y < gammeChoisie*12; ++y ) {
-						for ( int x = 0; x < canvas.score.numBeats; ++x ) {
-							int nbrALEA = nbrRDM(1,10000);
-							if(nbrALEA < 400)
-							{
-								canvas.score.grid[x][y] = true;
-							}
-							
-						}
-					}
+					// deux gammes choisies au hasard (possiblement la même)
+					canvas.score.addNotes( songGenerator.generate(
+						canvas.score.numBeats, canvas.score.numPitches, 2, SongGenerator.DEFAULT_DENSITY
+					) );
 					canvas.repaint();							
 					
 				}
@@ -924,105 +430,16 @@ public class SimplePianoRoll implements ActionListener {
 
 			if (returnVal == JFileChooser.APPROVE_OPTION) {
 				File file = new File(fc.getSelectedFile().getAbsolutePath() + ".mid");
-
-				System.out.println("Début Sauvegarde");
-				try
-				{
-					/************************AJOUT************************/
-					/**
-					 * midifile.java
-					 *
-					 * A very short program which builds and writes
-					 * a one-note Midi file.
-					 *
-					 * author  Karl Brown
-					 * last updated 2/24/2003
-					 */
-					//****  Create a new MIDI sequence with 24 ticks per beat  ****
-					Sequence s = new Sequence(javax.sound.midi.Sequence.PPQ,24);
-
-					//****  Obtain a MIDI track from the sequence  ****
-					Track t = s.createTrack();
-
-					//****  General MIDI sysex -- turn on General MIDI sound set  ****
-					byte[] b = {(byte)0xF0, 0x7E, 0x7F, 0x09, 0x01, (byte)0xF7};
-					SysexMessage sm = new SysexMessage();
-					sm.setMessage(b, 6);
-					MidiEvent me = new MidiEvent(sm,(long)0);
-					t.add(me);
-
-					//****  set tempo (meta event)  ****
-					MetaMessage mt = new MetaMessage();
-					byte[] bt = {0x02, (byte)0x00, 0x00};
-					mt.setMessage(0x51 ,bt, 3);
-					me = new MidiEvent(mt,(long)0);
-					t.add(me);
-
-					//****  set track name (meta event)  ****
-					mt = new MetaMessage();
-					String TrackName = new String("piste MIDI");
-					mt.setMessage(0x03 ,TrackName.getBytes(), TrackName.length());
-					me = new MidiEvent(mt,(long)0);
-					t.add(me);
-
-					//****  set omni on  ****
-					ShortMessage mm = new ShortMessage();
-					mm.setMessage(0xB0, 0x7D,0x00);
-					me = new MidiEvent(mm,(long)0);
-					t.add(me);
-
-					//****  set poly on  ****
-					mm = new ShortMessage();
-					mm.setMessage(0xB0, 0x7F,0x00);
-					me = new MidiEvent(mm,(long)0);
-					t.add(me);
-
-					//****  set instrument to Piano  ****
-					mm = new ShortMessage();
-					mm.setMessage(0xC0, 0x00, 0x00);
-					me = new MidiEvent(mm,(long)0);
-					t.add(me);
-
-					int cmpt = 0;
-					for (int x = 0; x < canvas.score.numBeats; ++x)
-					{
-						for (int y = 0; y < canvas.score.numPitches; ++y)
-						{
-							if (canvas.score.grid[x][y])
-							{
-								//****  note on - middle C  ****
-								mm = new ShortMessage();
-								mm.setMessage(0x90, y,0x60);
-								me = new MidiEvent(mm,(long)cmpt);
-								t.add(me);
-
-								//****  note off - middle C - 120 ticks later  ****
-								mm = new ShortMessage();
-								mm.setMessage(0x80, y,0x40);
-								me = new MidiEvent(mm,(long)cmpt + 150);
-								t.add(me);
-							}
-						}
-
-						cmpt += 150;
-					}	
-
-
-					//****  set end of track (meta event) 19 ticks later  ****
-					mt = new MetaMessage();
-					byte[] bet = {}; // empty array
-					mt.setMessage(0x2F,bet,0);
-					me = new MidiEvent(mt, (long)140);
-					t.add(me);
-
-					//****  write the MIDI sequence to a MIDI file  ****
-					MidiSystem.write(s,1,file);
-				} //try
-				catch(Exception e1)
-				{
-					System.out.println("Exception caught " + e1.toString());
-				} //catch
-				System.out.println("Fin Sauvegarde");
+				saveInBackground( file );
+			}
+		}
+		else if ( source == saveSprMenuItem ) {
+			JFileChooser fc = new JFileChooser();
+			if ( fc.showSaveDialog( frame ) == JFileChooser.APPROVE_OPTION ) {
+				File file = fc.getSelectedFile().getAbsoluteFile();
+				if ( ! file.getName().endsWith( ScoreSprFile.EXTENSION ) )
+					file = new File( file.getPath() + ScoreSprFile.EXTENSION );
+				saveInBackground( file );
 			}
 		}
 		else if ( source == quitMenuItem ) {
@@ -1034,6 +451,8 @@ public class SimplePianoRoll implements ActionListener {
 					);
 
 			if (response == JOptionPane.YES_OPTION) {
+				canvas.closeSequencer();
+				journal.discard();
 				System.exit(0);
 			}
 		}
@@ -1047,34 +466,7 @@ public class SimplePianoRoll implements ActionListener {
 			int returnVal = fc.showOpenDialog(frame);
 
 			if (returnVal == JFileChooser.APPROVE_OPTION) {
-				File file = fc.getSelectedFile();
-
-				canvas.clear();
-				try
-				{
-					Sequence sequence = MidiSystem.getSequence(file);
-
-					int beat = 0;
-					for (Track piste :  sequence.getTracks()) {
-						for (int x=0; x < piste.size(); x++) {
-							MidiEvent event = piste.get(x);
-							MidiMessage message = event.getMessage();
-							if (message instanceof ShortMessage) {
-								ShortMessage sm = (ShortMessage) message;
-								if (sm.getCommand() == 0x90) {
-									int key = sm.getData1();
-									int note = key;
-									beat = (int)(event.getTick() / 150);
-									if (beat <= canvas.score.numBeats && note < canvas.score.numPitches)
-									{
-										canvas.score.grid[beat][note] = true;
-									}
-								} 
-
-							}
-						}
-					}
-				} catch(Exception ex) {}
+				loadInBackground( fc.getSelectedFile() );
 			}
 
 
@@ -1130,6 +522,14 @@ public class SimplePianoRoll implements ActionListener {
 		else if ( source == loopWhenPlayingCheckBox ) {
 			isMusicLoopedWhenPlayed = loopWhenPlayingCheckBox.isSelected();
 		}
+		else if ( source == useSequencerCheckBox ) {
+			isSequencerUsedForPlayback = useSequencerCheckBox.isSelected();
+			if ( isMusicPlaying ) {
+				// restart, so that the new mode takes effect
+				canvas.stopBackgroundWork();
+				canvas.startBackgroundWork();
+			}
+		}
 		else if ( source == drawNotesRadioButton ) {
 			dragMode = DM_DRAW_NOTES;
 		}
@@ -1145,6 +545,16 @@ public class SimplePianoRoll implements ActionListener {
 		else if ( source == playNoteUponRolloverIfSpecialKeyHeldDownRadioButton ) {
 			rolloverMode = RM_PLAY_NOTE_UPON_ROLLOVER_IF_SPECIAL_KEY_HELD_DOWN;
 		}
+		else if ( source == undoMenuItem ) {
+			if ( canvas.history.undo() )
+				canvas.repaint();
+		}
+		else if ( source == redoMenuItem ) {
+			if ( canvas.history.redo() )
+				canvas.repaint();
+		}
+
+		canvas.history.endEdit();
 	}
 	
 	public int nbrRDM(int Min, int Max){
@@ -1177,6 +587,12 @@ public class SimplePianoRoll implements ActionListener {
 
 		frame = new JFrame( applicationName );
 		frame.setDefaultCloseOperation( JFrame.EXIT_ON_CLOSE );
+		frame.addWindowListener( new WindowAdapter() {
+			public void windowClosing( WindowEvent e ) {
+				canvas.closeSequencer();
+				journal.discard();
+			}
+		} );
 
 		JMenuBar menuBar = new JMenuBar();
 		//File menu
@@ -1199,9 +615,13 @@ public class SimplePianoRoll implements ActionListener {
 		saveMenuItem.addActionListener(this);
 		menu.add(saveMenuItem);
 
+		saveSprMenuItem = new JMenuItem("Save as .SPR");
+		saveSprMenuItem.addActionListener(this);
+		menu.add(saveSprMenuItem);
+
 		menu.addSeparator();
 
-		loadMenuItem = new JMenuItem("Load .MID");
+		loadMenuItem = new JMenuItem("Load .MID / .SPR");
 		loadMenuItem.addActionListener(this);
 		menu.add(loadMenuItem);
 
@@ -1219,6 +639,34 @@ public class SimplePianoRoll implements ActionListener {
 
 		//View menu
 		menuBar.add(menu);
+		menu = new JMenu("Edit");
+		undoMenuItem = new JMenuItem("Undo");
+		undoMenuItem.setAccelerator( KeyStroke.getKeyStroke( KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK ) );
+		undoMenuItem.addActionListener(this);
+		menu.add(undoMenuItem);
+
+		redoMenuItem = new JMenuItem("Redo");
+		redoMenuItem.setAccelerator( KeyStroke.getKeyStroke( KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK ) );
+		redoMenuItem.addActionListener(this);
+		menu.add(redoMenuItem);
+		// The items show whether there is anything to undo or redo while the menu is open.
+		// They are enabled again once it closes, so that their shortcuts keep working
+		// (undoing or redoing when there's nothing to undo or redo does nothing).
+		menu.addMenuListener( new MenuListener() {
+			public void menuSelected( MenuEvent e ) {
+				undoMenuItem.setEnabled( canvas.history.canUndo() );
+				redoMenuItem.setEnabled( canvas.history.canRedo() );
+			}
+			public void menuDeselected( MenuEvent e ) {
+				undoMenuItem.setEnabled( true );
+				redoMenuItem.setEnabled( true );
+			}
+			public void menuCanceled( MenuEvent e ) {
+				menuDeselected( e );
+			}
+		} );
+		menuBar.add(menu);
+
 		menu = new JMenu("View");
 		showToolsMenuItem = new JCheckBoxMenuItem("Show Options");
 		showToolsMenuItem.setSelected( true );
@@ -1254,6 +702,17 @@ public class SimplePianoRoll implements ActionListener {
 		toolPanel.setLayout( new BoxLayout( toolPanel, BoxLayout.Y_AXIS ) );
 
 		canvas = new MyCanvas(this);
+		canvas.score.addListener( dirtyTracker );
+
+		journal = new ScoreJournal( canvas.score, autosaveDirectory, ioExecutor );
+		try {
+			if ( journal.recover() )
+				System.out.println( "Recovered the score autosaved by the last session" );
+		}
+		catch ( IOException e ) {
+			System.out.println( "Exception caught " + e.toString() );
+		}
+		journal.start();
 
 		Container pane = frame.getContentPane();
 		pane.setLayout( new BoxLayout( pane, BoxLayout.X_AXIS ) );
@@ -1270,6 +729,11 @@ public class SimplePianoRoll implements ActionListener {
 		loopWhenPlayingCheckBox.addActionListener(this);
 		toolPanel.add( loopWhenPlayingCheckBox );
 
+		useSequencerCheckBox = new JCheckBox("Play with MIDI sequencer", isSequencerUsedForPlayback );
+		useSequencerCheckBox.setAlignmentX( Component.LEFT_ALIGNMENT );
+		useSequencerCheckBox.addActionListener(this);
+		toolPanel.add( useSequencerCheckBox );
+
 		toolPanel.add( Box.createRigidArea(new Dimension(1,20)) );
 		toolPanel.add( new JLabel("During dragging:") );
 
@@ -1330,6 +794,16 @@ public class SimplePianoRoll implements ActionListener {
 	}
 
 	public static void main( String[] args ) {
+		if ( args.length > 0 && args[0].equals( "--batch" ) ) {
+			// headless: see SongBatch
+			SongBatch.main( java.util.Arrays.copyOfRange( args, 1, args.length ) );
+			return;
+		}
+		if ( args.length > 0 && args[0].equals( "--render" ) ) {
+			// headless: see ScoreRenderer
+			ScoreRenderer.main( java.util.Arrays.copyOfRange( args, 1, args.length ) );
+			return;
+		}
 		// Schedule the creation of the UI for the event-dispatching thread.
 		javax.swing.SwingUtilities.invokeLater(
 				new Runnable() {
@@ -0,0 +1,133 @@
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Generates random songs in bulk, without any UI, and writes each one to a MIDI file.
+//
+//     java SongBatch <output directory> <number of songs> [<number of octaves> [<number of beats> [<seed> [<number of threads>]]]]
+//
+// (or SimplePianoRoll --batch followed by the same arguments).
+// The number of octaves is 1 for the songs of "Generate random song", and 2 for those of "Generate random song v2".
+//
+// The songs are spread over the threads (by default, one per core), song i going to thread i % numThreads.
+// Each thread has its own SongGenerator, split from the one seeded with the given seed,
+// and its own grid and ScoreMidiWriter, reused from one song to the next,
+// so the threads share nothing but the count of bytes written,
+// and a given seed and number of threads always give the same files.
+// Once done, prints the throughput in songs per second.
+class SongBatch {
+
+	public static final int DEFAULT_NUM_BEATS = 128;
+	public static final int NUM_PITCHES = 88; // as in a Score
+
+	private final File outputDirectory;
+	private final int numSongs;
+	private final int numOctaves;
+	private final int numBeats;
+	private final long seed;
+	private final int numThreads;
+	private final AtomicLong numBytesWritten = new AtomicLong();
+
+	public SongBatch( File outputDirectory, int numSongs, int numOctaves, int numBeats, long seed, int numThreads ) {
+		this.outputDirectory = outputDirectory;
+		this.numSongs = numSongs;
+		this.numOctaves = numOctaves;
+		this.numBeats = numBeats;
+		this.seed = seed;
+		this.numThreads = numThreads;
+	}
+
+	public File getSongFile( int song ) {
+		// zero padded, so the files list in order
+		int numDigits = Math.max( 5, Integer.toString( numSongs - 1 ).length() );
+		return new File( outputDirectory, String.format( "song-%0" + numDigits + "d.mid", song ) );
+	}
+
+	// Writes all the songs, and returns the number of bytes written.
+	public long run() throws IOException, InterruptedException {
+		outputDirectory.mkdirs();
+		if ( ! outputDirectory.isDirectory() )
+			throw new IOException( "not a directory: " + outputDirectory );
+		numBytesWritten.set( 0 );
+
+		SongGenerator generator = new SongGenerator( seed );
+		Thread [] threads = new Thread[ numThreads ];
+		// anything a thread throws, including unchecked exceptions and errors (e.g., running out of memory),
+		// is rethrown here, so that a batch never looks complete with songs missing
+		final Throwable [] failures = new Throwable[ numThreads ];
+		for ( int t = 0; t < numThreads; ++t ) {
+			final int firstSong = t;
+			final SongGenerator threadGenerator = generator.split();
+			threads[ t ] = new Thread( new Runnable() {
+				public void run() {
+					try {
+						writeSongs( firstSong, threadGenerator );
+					}
+					catch ( Throwable e ) {
+						failures[ firstSong ] = e;
+					}
+				}
+			}, "SongBatch-" + t );
+			threads[ t ].start();
+		}
+		for ( Thread thread : threads )
+			thread.join();
+		for ( Throwable e : failures ) {
+			if ( e instanceof IOException )
+				throw (IOException)e;
+			if ( e instanceof RuntimeException )
+				throw (RuntimeException)e;
+			if ( e instanceof Error )
+				throw (Error)e;
+		}
+		return numBytesWritten.get();
+	}
+
+	private void writeSongs( int firstSong, SongGenerator generator ) throws IOException {
+		NoteGrid grid = new DenseNoteGrid( numBeats, NUM_PITCHES );
+		ScoreMidiWriter writer = new ScoreMidiWriter();
+		long n = 0;
+		for ( int song = firstSong; song < numSongs; song += numThreads ) {
+			generator.generate( grid, numOctaves, SongGenerator.DEFAULT_DENSITY );
+			File file = getSongFile( song );
+			writer.write( grid, file );
+			n += file.length();
+		}
+		numBytesWritten.addAndGet( n );
+	}
+
+	public static void main( String[] args ) {
+		if ( args.length < 2 ) {
+			System.out.println(
+				"usage: SongBatch <output directory> <number of songs>"
+				+ " [<number of octaves> [<number of beats> [<seed> [<number of threads>]]]]"
+			);
+			System.exit( 1 );
+		}
+		int numSongs = Integer.parseInt( args[ 1 ] );
+		int numOctaves = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 1;
+		int numBeats = args.length > 3 ? Integer.parseInt( args[ 3 ] ) : DEFAULT_NUM_BEATS;
+		long seed = args.length > 4 ? Long.parseLong( args[ 4 ] ) : System.nanoTime();
+		int numThreads = args.length > 5 ? Integer.parseInt( args[ 5 ] ) : Runtime.getRuntime().availableProcessors();
+		numThreads = Math.max( 1, Math.min( numThreads, numSongs ) );
+
+		SongBatch batch = new SongBatch( new File( args[ 0 ] ), numSongs, numOctaves, numBeats, seed, numThreads );
+		try {
+			long startTime = System.nanoTime();
+			long numBytes = batch.run();
+			double seconds = ( System.nanoTime() - startTime ) / 1e9;
+			System.out.println(
+				"Wrote " + numSongs + " songs (" + numBytes / 1024 + " KB) to " + args[ 0 ]
+				+ " in " + String.format( "%.3f", seconds ) + " s with " + numThreads + " threads (seed " + seed + "): "
+				+ String.format( "%.1f", numSongs / seconds ) + " songs/s"
+			);
+		}
+		catch ( Exception e ) {
+			System.out.println( "Exception caught " + e.toString() );
+			System.exit( 1 );
+		}
+	}
+
+}
+
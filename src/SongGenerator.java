@@ -0,0 +1,111 @@
+
+import java.util.SplittableRandom;
+
+// Generates random songs like the "Generate random song" commands do:
+// each song is made of one or more octave bands, chosen at random among
+// the octaves [1, NUM_OCTAVES] (octave g being the pitch indices [12*(g-1), 12*g)),
+// in which each cell is turned on with probability DEFAULT_DENSITY.
+//
+// Instead of drawing a number per cell, the cells are drawn 64 at a time:
+// nextBernoulliWord() combines a few random longs into a word whose bits are each set
+// with the requested probability, and the bits of a word are spread over as many beats
+// of the band as they can fill (5 beats of 12 pitches), then ORed into the grid's columns.
+//
+// A generator is seeded, so a seed always gives the same songs, and doesn't touch any UI,
+// so it can be used headlessly. Like the SplittableRandom it's built on, it isn't thread safe;
+// use split() to get an independent generator for another thread.
+class SongGenerator {
+
+	public static final int NUM_OCTAVES = 7;
+	public static final int NUM_PITCHES_IN_OCTAVE = 12;
+
+	// The density of the original generators, which turned on a cell when nbrRDM(1,10000) < 400.
+	public static final double DEFAULT_DENSITY = 399 / 10000.0;
+
+	// The densities are rounded to a multiple of 2^-PRECISION_BITS,
+	// and each Bernoulli word costs at most PRECISION_BITS random longs.
+	public static final int PRECISION_BITS = 16;
+
+	private final SplittableRandom random;
+
+	public SongGenerator( long seed ) {
+		this( new SplittableRandom( seed ) );
+	}
+	private SongGenerator( SplittableRandom random ) {
+		this.random = random;
+	}
+
+	public SongGenerator split() {
+		return new SongGenerator( random.split() );
+	}
+
+	public int nextOctave() {
+		return 1 + random.nextInt( NUM_OCTAVES );
+	}
+
+	// Returns a word each bit of which is set, independently, with the given probability.
+	// The bits of the probability are visited from the least significant up:
+	// ANDing a uniform random word with x halves the probability of each bit of x,
+	// and ORing it gives (1 + that probability) / 2.
+	public long nextBernoulliWord( double density ) {
+		long p = Math.round( density * ( 1L << PRECISION_BITS ) );
+		if ( p <= 0 )
+			return 0;
+		if ( p >= ( 1L << PRECISION_BITS ) )
+			return -1L;
+		int lowestBit = Long.numberOfTrailingZeros( p );
+		long word = random.nextLong(); // for the lowest bit that is set, ORing with 0 is the same as this
+		for ( int bit = lowestBit + 1; bit < PRECISION_BITS; ++bit )
+			word = ( ( p >>> bit ) & 1 ) != 0 ? ( word | random.nextLong() ) : ( word & random.nextLong() );
+		return word;
+	}
+
+	// Turns on, with the given probability, each cell of the pitches [lowestPitch, lowestPitch + numPitchesInBand)
+	// in every beat of the grid, leaving the notes already on as they are.
+	public void fillBand( NoteGrid grid, int lowestPitch, int numPitchesInBand, double density ) {
+		assert 0 < numPitchesInBand && numPitchesInBand <= 64 && lowestPitch + numPitchesInBand <= grid.getNumPitches();
+		long bandMask = numPitchesInBand == 64 ? -1L : ( 1L << numPitchesInBand ) - 1;
+		int numBeatsPerWord = 64 / numPitchesInBand;
+		int numBeats = grid.getNumBeats();
+		for ( int x = 0; x < numBeats; ) {
+			long word = nextBernoulliWord( density );
+			for ( int i = 0; i < numBeatsPerWord && x < numBeats; ++i, ++x ) {
+				long bits = word & bandMask;
+				word >>>= numPitchesInBand;
+				if ( bits == 0 )
+					continue;
+				// the band may straddle the two words of the column
+				if ( lowestPitch >= 64 )
+					grid.orColumn( x, 0, bits << ( lowestPitch - 64 ) );
+				else if ( lowestPitch == 0 )
+					grid.orColumn( x, bits, 0 );
+				else
+					grid.orColumn( x, bits << lowestPitch, bits >>> ( 64 - lowestPitch ) );
+			}
+		}
+	}
+
+	// Fills a random octave of the grid, and returns it.
+	public int fillRandomOctave( NoteGrid grid, double density ) {
+		int octave = nextOctave();
+		fillBand( grid, ( octave - 1 ) * NUM_PITCHES_IN_OCTAVE, NUM_PITCHES_IN_OCTAVE, density );
+		return octave;
+	}
+
+	// Returns a new song, made of the given number of random octaves
+	// (1 for "Generate random song", 2 for "Generate random song v2").
+	public NoteGrid generate( int numBeats, int numPitches, int numOctaves, double density ) {
+		NoteGrid grid = new DenseNoteGrid( numBeats, numPitches );
+		generate( grid, numOctaves, density );
+		return grid;
+	}
+
+	// Same, but reusing the given grid, which is cleared first.
+	public void generate( NoteGrid grid, int numOctaves, double density ) {
+		grid.clear();
+		for ( int i = 0; i < numOctaves; ++i )
+			fillRandomOctave( grid, density );
+	}
+
+}
+
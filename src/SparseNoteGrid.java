@@ -0,0 +1,103 @@
+
+import java.util.Arrays;
+
+// A NoteGrid that only stores the beat columns having at least one note on.
+// The columns are kept as a map from beat to pitch mask,
+// implemented with a sorted int[] of beats and a parallel long[] of masks
+// (WORDS_PER_BEAT words per entry), so no boxing is involved.
+// Memory use and iteration time are proportional to the number of non-empty beats,
+// which makes this a good fit for long, mostly empty scores.
+class SparseNoteGrid extends NoteGrid {
+
+	private int [] beats = new int[ 16 ];
+	private long [] masks = new long[ 16 * WORDS_PER_BEAT ];
+	private int numEntries = 0;
+
+	public SparseNoteGrid( int numBeats, int numPitches ) {
+		super( numBeats, numPitches );
+	}
+
+	public boolean isDense() { return false; }
+
+	public int getNumNonEmptyBeats() { return numEntries; }
+
+	// Returns the index of the entry for the given beat if there is one,
+	// or else (-(insertion point) - 1).
+	private int find( int beat ) {
+		// Notes tend to be added in increasing beat order, so check the last entry first.
+		if ( numEntries == 0 || beats[ numEntries-1 ] < beat )
+			return -numEntries - 1;
+		return Arrays.binarySearch( beats, 0, numEntries, beat );
+	}
+
+	public long getWord( int beat, int wordIndex ) {
+		int i = find( beat );
+		return i < 0 ? 0 : masks[ i * WORDS_PER_BEAT + wordIndex ];
+	}
+
+	public void setColumn( int beat, long word0, long word1 ) {
+		int i = find( beat );
+		boolean isEmpty = ( word0 | word1 ) == 0;
+		if ( i >= 0 ) {
+			int j = i * WORDS_PER_BEAT;
+			numNotes += Long.bitCount( word0 ) + Long.bitCount( word1 )
+				- Long.bitCount( masks[j] ) - Long.bitCount( masks[j+1] );
+			if ( isEmpty ) {
+				removeEntries( i, i+1 );
+			}
+			else {
+				masks[j] = word0;
+				masks[j+1] = word1;
+			}
+		}
+		else if ( ! isEmpty ) {
+			i = -i - 1;
+			if ( numEntries == beats.length ) {
+				beats = Arrays.copyOf( beats, 2 * beats.length );
+				masks = Arrays.copyOf( masks, 2 * masks.length );
+			}
+			System.arraycopy( beats, i, beats, i+1, numEntries - i );
+			System.arraycopy( masks, i * WORDS_PER_BEAT, masks, (i+1) * WORDS_PER_BEAT, (numEntries - i) * WORDS_PER_BEAT );
+			beats[i] = beat;
+			masks[ i * WORDS_PER_BEAT ] = word0;
+			masks[ i * WORDS_PER_BEAT + 1 ] = word1;
+			++ numEntries;
+			numNotes += Long.bitCount( word0 ) + Long.bitCount( word1 );
+		}
+	}
+
+	// Removes the entries with indices [from, to).
+	private void removeEntries( int from, int to ) {
+		System.arraycopy( beats, to, beats, from, numEntries - to );
+		System.arraycopy( masks, to * WORDS_PER_BEAT, masks, from * WORDS_PER_BEAT, (numEntries - to) * WORDS_PER_BEAT );
+		numEntries -= to - from;
+	}
+
+	public int nextNonEmptyBeat( int fromBeat ) {
+		int i = find( Math.max( fromBeat, 0 ) );
+		if ( i < 0 )
+			i = -i - 1;
+		return i < numEntries ? beats[i] : -1;
+	}
+
+	public void setNumBeats( int newNumBeats ) {
+		assert newNumBeats >= 0;
+		if ( newNumBeats < numBeats )
+			clearBeats( newNumBeats, numBeats );
+		numBeats = newNumBeats;
+	}
+
+	public void clearBeats( int fromBeat, int toBeat ) {
+		int from = find( fromBeat );
+		if ( from < 0 ) from = -from - 1;
+		int to = find( toBeat );
+		if ( to < 0 ) to = -to - 1;
+		if ( from >= to )
+			return;
+		for ( int j = from * WORDS_PER_BEAT; j < to * WORDS_PER_BEAT; ++j )
+			numNotes -= Long.bitCount( masks[j] );
+		removeEntries( from, to );
+	}
+
+}
+
@@ -1,39 +1,39 @@
 
 import java.lang.Math;
 
+// Like Point2D: plain fields, and ...Into() variants of the operations that return a new vector.
 public class Vector2D {
 
-	public float [] v = new float[2];
+	public float x, y;
 
 	public Vector2D() {
-		v[0] = v[1] = 0;
 	}
 
 	public Vector2D( float x, float y ) {
-		v[0] = x;
-		v[1] = y;
+		this.x = x;
+		this.y = y;
 	}
 
 	public Vector2D( Point2D P ) {
-		v[0] = P.p[0];
-		v[1] = P.p[1];
+		x = P.x;
+		y = P.y;
 	}
 
 	public void copy( float x, float y ) {
-		v[0] = x;
-		v[1] = y;
+		this.x = x;
+		this.y = y;
 	}
 
 	public void copy( Vector2D V ) {
-		v[0] = V.v[0];
-		v[1] = V.v[1];
+		x = V.x;
+		y = V.y;
 	}
 
-	public float x() { return v[0]; }
-	public float y() { return v[1]; }
+	public float x() { return x; }
+	public float y() { return y; }
 
 	public float lengthSquared() {
-		return x()*x() + y()*y();
+		return x*x + y*y;
 	}
 	public float length() {
 		return (float)Math.sqrt( lengthSquared() );
@@ -68,16 +68,24 @@ public class Vector2D {
 	}
 
 	public Vector2D negated() {
-		return new Vector2D(-x(),-y());
+		return negatedInto( new Vector2D() );
+	}
+	public Vector2D negatedInto( Vector2D dest ) {
+		dest.copy( -x, -y );
+		return dest;
 	}
 
 	public Vector2D normalized() {
+		return normalizedInto( new Vector2D() );
+	}
+	public Vector2D normalizedInto( Vector2D dest ) {
 		float l = length();
 		if ( l > 0 ) {
 			float k = 1/l; // scale factor
-			return new Vector2D(k*x(),k*y());
+			dest.copy( k*x, k*y );
 		}
-		else return new Vector2D(x(),y());
+		else dest.copy( x, y );
+		return dest;
 	}
 
 	// returns the dot-product of the given vectors
@@ -87,17 +95,29 @@ public class Vector2D {
 
 	// returns the sum of the given vectors
 	static public Vector2D sum( Vector2D a, Vector2D b ) {
-		return new Vector2D( a.x()+b.x(), a.y()+b.y() );
+		return sumInto( a, b, new Vector2D() );
+	}
+	static public Vector2D sumInto( Vector2D a, Vector2D b, Vector2D dest ) {
+		dest.copy( a.x+b.x, a.y+b.y );
+		return dest;
 	}
 
 	// returns the difference of the given vectors
 	static public Vector2D diff( Vector2D a, Vector2D b ) {
-		return new Vector2D( a.x()-b.x(), a.y()-b.y() );
+		return diffInto( a, b, new Vector2D() );
+	}
+	static public Vector2D diffInto( Vector2D a, Vector2D b, Vector2D dest ) {
+		dest.copy( a.x-b.x, a.y-b.y );
+		return dest;
 	}
 
 	// returns the product of the given vector and scalar
 	static public Vector2D mult( Vector2D a, float b ) {
-		return new Vector2D( a.x()*b, a.y()*b );
+		return multInto( a, b, new Vector2D() );
+	}
+	static public Vector2D multInto( Vector2D a, float b, Vector2D dest ) {
+		dest.copy( a.x*b, a.y*b );
+		return dest;
 	}
 
 	// Computes the angle of rotation from v1 to v2 around the origin.
@@ -110,15 +130,17 @@ public class Vector2D {
 		//	new Vector3D( v2.x(), v2.y(), 0 ),
 		//	new Vector3D( 0, 0, 1 )
 		//);
-
-		float productOfLengths = v1.length() * v2.length();
+		return computeSignedAngle( v1.x, v1.y, v2.x, v2.y );
+	}
+	static public float computeSignedAngle( float v1_x, float v1_y, float v2_x, float v2_y ) {
+		float productOfLengths = (float)Math.sqrt( v1_x*v1_x + v1_y*v1_y ) * (float)Math.sqrt( v2_x*v2_x + v2_y*v2_y );
 		if ( productOfLengths <= 0 )
 			return 0;
 
 		// Compute the z component of the cross product of v1 and v2
 		// (Note that the x and y components of the cross product are zero,
 		// because the z components of a and b are both zero)
-		double crossProduct_z = v1.x()*v2.y() - v1.y()*v2.x();
+		double crossProduct_z = v1_x*v2_y - v1_y*v2_x;
 
 		double sineOfAngle = Math.abs(crossProduct_z) / productOfLengths;
 
@@ -128,7 +150,7 @@ public class Vector2D {
 		double angle = ( sineOfAngle >= 1 ) ? Math.PI/2 : Math.asin( sineOfAngle );
 
 		// Compute the dot product of v1 and v2
-		float dotProduct = Vector2D.dot( v1, v2 );
+		float dotProduct = v1_x*v2_x + v1_y*v2_y;
 
 		if ( dotProduct < 0 )
 			angle = Math.PI - angle;
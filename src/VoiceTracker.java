@@ -0,0 +1,62 @@
+
+import javax.sound.midi.MidiChannel;
+
+// Keeps track of which pitches are currently sounding during playback,
+// as one bit per pitch index, laid out like a NoteGrid column.
+// Moving to a new beat diffs the sounding pitches with the beat's column a word at a time,
+// and only sends the messages for pitches whose state actually changes:
+// a note that is on in two adjacent beats is held rather than retriggered,
+// and a note is always released exactly once, even if the grid was edited in between.
+class VoiceTracker {
+
+	private final long [] sounding = new long[ NoteGrid.WORDS_PER_BEAT ];
+	private final int midiNoteNumberOfPitchIndex0;
+
+	private int numMessagesSent = 0;
+
+	public VoiceTracker( int midiNoteNumberOfPitchIndex0 ) {
+		this.midiNoteNumberOfPitchIndex0 = midiNoteNumberOfPitchIndex0;
+	}
+
+	// Makes the sounding pitches be those of the given beat of the grid.
+	public void playBeat( NoteGrid grid, int beat, MidiChannel channel, int velocity ) {
+		for ( int wordIndex = 0; wordIndex < NoteGrid.WORDS_PER_BEAT; ++wordIndex ) {
+			long incoming = beat < grid.getNumBeats() ? grid.getWord( beat, wordIndex ) : 0;
+			long outgoing = sounding[ wordIndex ];
+			// as before, the released notes go out before the new ones
+			for ( long bits = outgoing & ~incoming; bits != 0; bits &= bits - 1 ) {
+				channel.noteOff( midiNoteNumberOf( wordIndex, bits ) );
+				++ numMessagesSent;
+			}
+			for ( long bits = incoming & ~outgoing; bits != 0; bits &= bits - 1 ) {
+				channel.noteOn( midiNoteNumberOf( wordIndex, bits ), velocity );
+				++ numMessagesSent;
+			}
+			sounding[ wordIndex ] = incoming;
+		}
+	}
+
+	// Releases every sounding pitch (e.g., when playback stops).
+	public void releaseAll( MidiChannel channel ) {
+		for ( int wordIndex = 0; wordIndex < NoteGrid.WORDS_PER_BEAT; ++wordIndex ) {
+			for ( long bits = sounding[ wordIndex ]; bits != 0; bits &= bits - 1 ) {
+				channel.noteOff( midiNoteNumberOf( wordIndex, bits ) );
+				++ numMessagesSent;
+			}
+			sounding[ wordIndex ] = 0;
+		}
+	}
+
+	// The lowest bit that is set in the given bits.
+	private int midiNoteNumberOf( int wordIndex, long bits ) {
+		return midiNoteNumberOfPitchIndex0 + wordIndex * 64 + Long.numberOfTrailingZeros( bits );
+	}
+
+	public boolean isSounding( int pitchIndex ) {
+		return ( sounding[ pitchIndex >>> 6 ] & (1L << pitchIndex) ) != 0;
+	}
+
+	public int getNumMessagesSent() { return numMessagesSent; }
+
+}
+